@@ -29,6 +29,16 @@ android {
             )
         }
     }
+    testOptions {
+        // Lets plain JVM tests run code that logs through android.util.Log
+        unitTests.isReturnDefaultValues = true
+        // Passes opt-in switches such as -Dbenchmark=true on to the test JVM
+        unitTests.all {
+            for (name in listOf("benchmark", "endpoint.corpus")) {
+                System.getProperty(name)?.let { value -> it.systemProperty(name, value) }
+            }
+        }
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
@@ -52,6 +62,7 @@ dependencies {
     implementation("com.google.api:gax:1.71.0")
     implementation("io.grpc:grpc-api:1.71.0")
     implementation("io.grpc:grpc-core:1.71.0")
+    implementation("com.google.code.gson:gson:2.11.0")
     implementation(libs.espresso.core)
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
@@ -0,0 +1,141 @@
+package com.example.speechtranslator;
+
+import java.util.Arrays;
+
+// Decides when an utterance is over from how long the speaker has been quiet
+// Learns the pauses each speaker makes inside utterances during the session, and ends an utterance
+// once a silence is longer than those usual pauses
+// Waits less when the speech faded out before the silence, as it does at the end of a phrase,
+// and longer when it stopped at full level, as it does mid-sentence
+// Timeouts always stay between MIN_TIMEOUT_MILLIS and MAX_TIMEOUT_MILLIS
+public class AdaptiveEndpointer {
+    // Hard bounds on the silence that ends an utterance
+    public static final int MIN_TIMEOUT_MILLIS = 350;
+    public static final int MAX_TIMEOUT_MILLIS = 2000;
+    // Timeouts used until enough pauses have been heard to learn from
+    private static final int INITIAL_MID_SENTENCE_TIMEOUT_MILLIS = 1200;
+    private static final int INITIAL_FALLING_TIMEOUT_MILLIS = 700;
+    // Pauses needed before the learned timeouts are used
+    private static final int MIN_LEARNED_PAUSES = 4;
+    // Number of recent pauses learned from
+    private static final int PAUSE_HISTORY = 32;
+    // Shorter gaps are between syllables rather than between words, so are not learned
+    private static final int MIN_PAUSE_MILLIS = 120;
+    // Waited on top of the learned pause length
+    private static final int MARGIN_MILLIS = 150;
+    // Share of learned pauses that must be shorter than the timeout, mid-sentence and after falling energy
+    private static final double MID_SENTENCE_PERCENTILE = 0.9;
+    private static final double FALLING_PERCENTILE = 0.5;
+    // Speech is falling off when its recent level drops below this fraction of the utterance's level
+    private static final double FALLING_RATIO = 0.5;
+    // Speech coming back this soon after a timeout means the utterance was ended too early
+    private static final int RESUME_MILLIS = 1000;
+    // Smoothing applied per voiced frame to the recent and the whole-utterance level
+    private static final double RECENT_SMOOTHING = 0.3;
+    private static final double UTTERANCE_SMOOTHING = 0.05;
+
+    // Ring of recent pause lengths, and scratch space for finding their percentiles
+    private final int[] pauses = new int[PAUSE_HISTORY];
+    private final int[] sortedPauses = new int[PAUSE_HISTORY];
+    private int pauseCount;
+    private int nextPause;
+    private int midSentenceTimeout = INITIAL_MID_SENTENCE_TIMEOUT_MILLIS;
+    private int fallingTimeout = INITIAL_FALLING_TIMEOUT_MILLIS;
+
+    private boolean inUtterance;
+    private boolean inSilence;
+    // Whether the speech before the current silence was fading out
+    private boolean falling;
+    private long lastVoiceMillis;
+    private double recentLevel;
+    private double utteranceLevel;
+    // When the last utterance was ended by a timeout, and the silence it waited out
+    private long lastTimeoutMillis = Long.MIN_VALUE;
+    private long lastTimeoutVoiceMillis;
+    private int prematureEnds;
+
+    // Called for every frame with voice in it, with the frame's amplitude
+    public void onVoice(long now, int level) {
+        if (!inUtterance) {
+            inUtterance = true;
+            recentLevel = level;
+            utteranceLevel = level;
+            // The speaker was only pausing, so the whole silence is learned as a pause
+            if (lastTimeoutMillis != Long.MIN_VALUE && now - lastTimeoutMillis < RESUME_MILLIS) {
+                prematureEnds++;
+                recordPause(now - lastTimeoutVoiceMillis);
+            }
+        } else if (inSilence) {
+            recordPause(now - lastVoiceMillis);
+        }
+        inSilence = false;
+        lastVoiceMillis = now;
+        recentLevel += RECENT_SMOOTHING * (level - recentLevel);
+        utteranceLevel += UTTERANCE_SMOOTHING * (level - utteranceLevel);
+    }
+
+    // Called for every silent frame, returns true once the silence is long enough to end the utterance
+    public boolean isEndOfSpeech(long now) {
+        if (!inUtterance) {
+            return false;
+        }
+        if (!inSilence) {
+            inSilence = true;
+            falling = recentLevel < FALLING_RATIO * utteranceLevel;
+        }
+        if (now - lastVoiceMillis <= getTimeout()) {
+            return false;
+        }
+        lastTimeoutMillis = now;
+        lastTimeoutVoiceMillis = lastVoiceMillis;
+        onEnd();
+        return true;
+    }
+
+    // Called when the utterance ended for another reason, such as reaching its maximum length
+    public void onEnd() {
+        inUtterance = false;
+        inSilence = false;
+    }
+
+    // Silence that ends the utterance at this point
+    public int getTimeout() {
+        return falling ? fallingTimeout : midSentenceTimeout;
+    }
+
+    public int getMidSentenceTimeout() {
+        return midSentenceTimeout;
+    }
+
+    public int getFallingTimeout() {
+        return fallingTimeout;
+    }
+
+    // Utterances that turned out to have been ended while the speaker was only pausing
+    public int getPrematureEndCount() {
+        return prematureEnds;
+    }
+
+    private void recordPause(long millis) {
+        if (millis < MIN_PAUSE_MILLIS) {
+            return;
+        }
+        pauses[nextPause] = (int) Math.min(millis, MAX_TIMEOUT_MILLIS);
+        nextPause = (nextPause + 1) % PAUSE_HISTORY;
+        pauseCount = Math.min(pauseCount + 1, PAUSE_HISTORY);
+        if (pauseCount >= MIN_LEARNED_PAUSES) {
+            System.arraycopy(pauses, 0, sortedPauses, 0, pauseCount);
+            Arrays.sort(sortedPauses, 0, pauseCount);
+            midSentenceTimeout = clamp(percentile(MID_SENTENCE_PERCENTILE) + MARGIN_MILLIS);
+            fallingTimeout = clamp(percentile(FALLING_PERCENTILE) + MARGIN_MILLIS);
+        }
+    }
+
+    private int percentile(double fraction) {
+        return sortedPauses[(int) Math.round(fraction * (pauseCount - 1))];
+    }
+
+    private static int clamp(int millis) {
+        return Math.max(MIN_TIMEOUT_MILLIS, Math.min(MAX_TIMEOUT_MILLIS, millis));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.speechtranslator;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.SystemClock;
+
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Compresses 16 kHz 16-bit mono PCM to AMR-WB with the platform encoder, for Speech-to-Text's AMR_WB encoding
+// The frames are written after the AMR-WB file header, as in a .awb file
+public class AmrWbEncoder {
+    private static final int SAMPLE_RATE = 16000;
+    // Highest AMR-WB mode, the closest to the original
+    private static final int BIT_RATE = 23850;
+    private static final byte[] HEADER = "#!AMR-WB\n".getBytes();
+    // How long each wait for a codec buffer may take, and how long a whole utterance may take
+    private static final long DEQUEUE_TIMEOUT_MICROS = 10000;
+    private static final long MAX_ENCODE_MILLIS = 2000;
+
+    private AmrWbEncoder() {}
+
+    // Whether the device has an AMR-WB encoder
+    public static boolean isAvailable() {
+        return new MediaCodecList(MediaCodecList.REGULAR_CODECS).findEncoderForFormat(createFormat()) != null;
+    }
+
+    public static ByteString encode(ByteString pcm) throws IOException {
+        int size = pcm.size() & ~1;
+        ByteString.Output out = ByteString.newOutput(HEADER.length + size / 10);
+        out.write(HEADER);
+        MediaCodec codec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AMR_WB);
+        try {
+            codec.configure(createFormat(), null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            byte[] frame = new byte[0];
+            int offset = 0;
+            boolean inputDone = false;
+            long deadline = SystemClock.elapsedRealtime() + MAX_ENCODE_MILLIS;
+            while (true) {
+                if (SystemClock.elapsedRealtime() > deadline) {
+                    throw new IOException("AMR-WB encoder stalled");
+                }
+                if (!inputDone) {
+                    int inputIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_MICROS);
+                    if (inputIndex >= 0) {
+                        ByteBuffer input = codec.getInputBuffer(inputIndex);
+                        int count = Math.min(input.remaining(), size - offset) & ~1;
+                        long presentationMicros = (long) offset / 2 * 1000000 / SAMPLE_RATE;
+                        if (count == 0) {
+                            codec.queueInputBuffer(inputIndex, 0, 0, presentationMicros, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            // Copies straight from the utterance's memory into the codec
+                            pcm.substring(offset, offset + count).copyTo(input);
+                            codec.queueInputBuffer(inputIndex, 0, count, presentationMicros, 0);
+                            offset += count;
+                        }
+                    }
+                }
+                int outputIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_MICROS);
+                if (outputIndex >= 0) {
+                    if (info.size > 0 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                        ByteBuffer output = codec.getOutputBuffer(outputIndex);
+                        output.position(info.offset);
+                        if (frame.length < info.size) {
+                            frame = new byte[info.size];
+                        }
+                        output.get(frame, 0, info.size);
+                        out.write(frame, 0, info.size);
+                    }
+                    codec.releaseOutputBuffer(outputIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+            codec.stop();
+        } catch (IllegalStateException e) {
+            throw new IOException("AMR-WB encoding failed", e);
+        } finally {
+            codec.release();
+        }
+        return out.toByteString();
+    }
+
+    private static MediaFormat createFormat() {
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AMR_WB, SAMPLE_RATE, 1);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
+        return format;
+    }
+}
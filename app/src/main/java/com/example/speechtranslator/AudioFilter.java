@@ -0,0 +1,22 @@
+package com.example.speechtranslator;
+
+// One stage of the capture-path audio processing
+// Filters work in place on 16-bit samples and must not allocate in process(), since it runs for every frame
+public interface AudioFilter {
+    // Prepares for a new stream at the given sample rate, clearing any state from the last one
+    void reset(int sampleRate);
+
+    // Filters the first count samples in place
+    void process(short[] samples, int count);
+
+    // Rounds a processed sample towards zero and saturates it to the 16-bit range instead of wrapping
+    static short clip(float sample) {
+        if (sample > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (sample < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) sample;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.speechtranslator;
+
+// Runs captured PCM frames through a series of filters in order
+// Budget: under 1 ms of CPU per 20 ms frame on a mid-range phone, checked by AudioFilterBenchmark
+// Nothing is allocated per frame once the scratch buffer has grown to the frame size
+public class AudioFilterChain {
+    private final AudioFilter[] filters;
+    private short[] scratch = new short[0];
+
+    public AudioFilterChain(AudioFilter... filters) {
+        this.filters = filters;
+    }
+
+    // Clears all filter state for a new recording at the given sample rate
+    public void reset(int sampleRate) {
+        for (AudioFilter filter : filters) {
+            filter.reset(sampleRate);
+        }
+    }
+
+    // Filters little-endian 16-bit PCM in place
+    public void process(byte[] pcm, int size) {
+        int count = size / 2;
+        if (scratch.length < count) {
+            scratch = new short[count];
+        }
+        for (int i = 0; i < count; i++) {
+            scratch[i] = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+        }
+        process(scratch, count);
+        for (int i = 0; i < count; i++) {
+            pcm[2 * i] = (byte) scratch[i];
+            pcm[2 * i + 1] = (byte) (scratch[i] >> 8);
+        }
+    }
+
+    public void process(short[] samples, int count) {
+        for (AudioFilter filter : filters) {
+            filter.process(samples, count);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.speechtranslator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Ways an utterance's audio can be sent to Speech-to-Text, from the most accurate to the least
+// Each is chosen per utterance, trading accuracy for upload time on slow links
+public enum AudioProfile {
+    // The capture as it is
+    PCM_16K(16000, 32000, false),
+    // Wideband speech codec at 23.85 kbit/s, about a tenth of the size and still 16 kHz
+    AMR_WB(16000, 3000, true),
+    // Half the size by dropping the upper half of the band, for devices without an AMR-WB encoder
+    PCM_8K(8000, 16000, false);
+
+    private final int sampleRate;
+    private final int bytesPerSecond;
+    private final boolean compressed;
+
+    AudioProfile(int sampleRate, int bytesPerSecond, boolean compressed) {
+        this.sampleRate = sampleRate;
+        this.bytesPerSecond = bytesPerSecond;
+        this.compressed = compressed;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    // Approximate upload size of audioMillis of speech
+    public long estimateBytes(long audioMillis) {
+        return audioMillis * bytesPerSecond / 1000;
+    }
+
+    // The most accurate profile expected to upload within targetMillis, or the smallest if none will
+    // While the estimator cannot yet tell server time from transfer time, the next more accurate profile is
+    // sent instead once, since uploads that all use one profile would leave it mistaking one for the other
+    public static AudioProfile choose(BandwidthEstimator estimator, long audioMillis, long targetMillis,
+                                      boolean compressionAvailable) {
+        List<AudioProfile> usable = new ArrayList<>();
+        for (AudioProfile profile : values()) {
+            if (!profile.compressed || compressionAvailable) {
+                usable.add(profile);
+            }
+        }
+        AudioProfile chosen = null;
+        for (AudioProfile profile : usable) {
+            if (estimator.predictMillis(profile.estimateBytes(audioMillis)) <= targetMillis) {
+                chosen = profile;
+                break;
+            }
+            if (chosen == null || profile.bytesPerSecond < chosen.bytesPerSecond) {
+                chosen = profile;
+            }
+        }
+        int index = usable.indexOf(chosen);
+        if (estimator.isProbeDue() && index > 0) {
+            return usable.get(index - 1);
+        }
+        return chosen;
+    }
+}
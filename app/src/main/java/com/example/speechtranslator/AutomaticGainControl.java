@@ -0,0 +1,66 @@
+package com.example.speechtranslator;
+
+// Brings quiet and loud speakers to a similar level by scaling each frame towards a target RMS level
+// Gain drops quickly when the level rises, so loud speech is not clipped for long, and rises slowly
+// when it falls, so pauses do not pump up the background
+// Frames below the noise gate leave the gain where it is, so silence is raised no more than the speech before it
+// rather than all the way up to the target level
+public class AutomaticGainControl implements AudioFilter {
+    private final float targetLevel;
+    private final float noiseGate;
+    private final float maxGain;
+    // Time constants for lowering and raising the gain
+    private final float attackMillis;
+    private final float releaseMillis;
+    private int sampleRate;
+    private float gain;
+
+    // targetLevel and noiseGate are RMS levels in sample units; maxGain limits how much quiet input is raised
+    public AutomaticGainControl(float targetLevel, float noiseGate, float maxGain, float attackMillis, float releaseMillis) {
+        this.targetLevel = targetLevel;
+        this.noiseGate = noiseGate;
+        this.maxGain = maxGain;
+        this.attackMillis = attackMillis;
+        this.releaseMillis = releaseMillis;
+    }
+
+    public void reset(int sampleRate) {
+        this.sampleRate = sampleRate;
+        gain = 1;
+    }
+
+    public float getGain() {
+        return gain;
+    }
+
+    public void process(short[] samples, int count) {
+        if (count == 0) {
+            return;
+        }
+        double sumSquares = 0;
+        for (int i = 0; i < count; i++) {
+            sumSquares += (double) samples[i] * samples[i];
+        }
+        float level = (float) Math.sqrt(sumSquares / count);
+
+        float startGain = gain;
+        float endGain = startGain;
+        if (level >= noiseGate) {
+            float wanted = Math.min(maxGain, targetLevel / level);
+            // Moves part of the way to the wanted gain, depending on how long the frame is
+            float frameMillis = count * 1000f / sampleRate;
+            float timeConstant = wanted < startGain ? attackMillis : releaseMillis;
+            float step = (float) (1 - Math.exp(-frameMillis / timeConstant));
+            endGain = startGain + step * (wanted - startGain);
+        }
+
+        // Ramps the gain across the frame so there is no step at frame boundaries
+        float increment = (endGain - startGain) / count;
+        float current = startGain;
+        for (int i = 0; i < count; i++) {
+            current += increment;
+            samples[i] = AudioFilter.clip(samples[i] * current);
+        }
+        gain = endGain;
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.speechtranslator;
+
+// Estimates upload bandwidth and round-trip time from how long recognition requests of different sizes take
+// A request's time also includes recognition on the server, which grows with the length of the audio rather
+// than with its size in bytes, so the fit is time = rtt + server time per second of audio + bytes / bandwidth
+// Server time can only be told apart from transfer time when recent uploads differ in bytes per second of
+// audio, i.e. were sent in different profiles; until that has happened once, isProbeDue() asks for one upload
+// in a more accurate profile
+// When the uploads are too alike to fit everything, the last known server time is taken off and only
+// the round-trip time and bandwidth are learned, or only the bandwidth if the sizes are alike as well
+// Uploads that ran alongside others are assumed to have had an even share of the link
+// Starts over when the device moves to another network, except for the server time, which belongs to the service
+public class BandwidthEstimator {
+    // Used until uploads on the current network have been measured
+    static final int DEFAULT_BANDWIDTH_KBPS = 500;
+    static final int DEFAULT_RTT_MILLIS = 300;
+    // Bounds on the estimates, so one odd upload cannot make predictions absurd
+    private static final double MIN_BANDWIDTH_KBPS = 8;
+    private static final double MAX_BANDWIDTH_KBPS = 100000;
+    // Number of recent uploads learned from
+    private static final int HISTORY = 16;
+    // Uploads needed before the round-trip time is fitted rather than assumed
+    private static final int MIN_FIT_SAMPLES = 3;
+    // Spread of upload sizes, or of bytes per second of audio, relative to their mean, needed to fit on them
+    private static final double MIN_SIZE_SPREAD = 0.25;
+
+    // Ring of recent upload sizes, audio lengths and times
+    private final long[] sizes = new long[HISTORY];
+    private final long[] audioMillis = new long[HISTORY];
+    private final long[] times = new long[HISTORY];
+    private int count;
+    private int next;
+    private double bandwidthKbps = DEFAULT_BANDWIDTH_KBPS;
+    private double rttMillis = DEFAULT_RTT_MILLIS;
+    // Round-trip time from the last successful fit, or the default, which the estimate returns to
+    // once the uploads that were quicker than it have left the history
+    private double fittedRttMillis = DEFAULT_RTT_MILLIS;
+    // Server time per second of audio, and whether it has been measured yet
+    private double serverMillisPerSecond;
+    private boolean serverTimeMeasured;
+
+    // Forgets what was learned about the link, for when the device switches networks
+    public synchronized void reset() {
+        count = 0;
+        next = 0;
+        bandwidthKbps = DEFAULT_BANDWIDTH_KBPS;
+        rttMillis = DEFAULT_RTT_MILLIS;
+        fittedRttMillis = DEFAULT_RTT_MILLIS;
+    }
+
+    // Takes the system's estimate of the link's upstream bandwidth, which only counts until uploads are measured
+    public synchronized void setLinkEstimate(int upstreamKbps) {
+        if (upstreamKbps <= 0) {
+            return;
+        }
+        if (count == 0) {
+            bandwidthKbps = clampBandwidth(upstreamKbps);
+        }
+    }
+
+    // Records an upload of bytes holding audioMillis of speech, which took millis from sending the request
+    // to receiving the response
+    // concurrentUploads is how many uploads, this one included, were in flight at once; with the link split
+    // between them, this one took as long as an upload of concurrentUploads times its size would have alone
+    public synchronized void onUpload(long bytes, long audioMillis, long millis, int concurrentUploads) {
+        if (bytes <= 0 || audioMillis <= 0 || millis <= 0) {
+            return;
+        }
+        sizes[next] = bytes * Math.max(1, concurrentUploads);
+        this.audioMillis[next] = audioMillis;
+        times[next] = millis;
+        next = (next + 1) % HISTORY;
+        count = Math.min(count + 1, HISTORY);
+        fit();
+    }
+
+    // Expected time to upload bytes and get a response, leaving out recognition on the server
+    // The server time is the same whichever way the audio is sent, so this is what profiles are compared on
+    public synchronized long predictMillis(long bytes) {
+        return Math.round(rttMillis + bytes * 8 / bandwidthKbps);
+    }
+
+    // Expected time of a whole recognition request for audioMillis of speech sent as bytes
+    public synchronized long predictMillis(long bytes, long audioMillis) {
+        return Math.round(rttMillis + serverMillisPerSecond * audioMillis / 1000 + bytes * 8 / bandwidthKbps);
+    }
+
+    // Whether the next upload should be sent in a more accurate profile than needed, to measure the server time
+    // Only asked for until the server time has been measured once
+    public synchronized boolean isProbeDue() {
+        return !serverTimeMeasured && count >= MIN_FIT_SAMPLES;
+    }
+
+    public synchronized double getBandwidthKbps() {
+        return bandwidthKbps;
+    }
+
+    public synchronized double getRttMillis() {
+        return rttMillis;
+    }
+
+    public synchronized double getServerMillisPerSecond() {
+        return serverMillisPerSecond;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    private void fit() {
+        if (count >= MIN_FIT_SAMPLES + 1 && fitWithServerTime()) {
+            return;
+        }
+        // Takes off the server time as last measured and fits the rest on the size alone
+        double[] transferTimes = new double[count];
+        for (int i = 0; i < count; i++) {
+            transferTimes[i] = Math.max(1, times[i] - serverMillisPerSecond * audioMillis[i] / 1000);
+        }
+        double meanSize = 0;
+        double meanTime = 0;
+        double minTime = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            meanSize += sizes[i];
+            meanTime += transferTimes[i];
+            minTime = Math.min(minTime, transferTimes[i]);
+        }
+        meanSize /= count;
+        meanTime /= count;
+
+        if (count >= MIN_FIT_SAMPLES) {
+            double sizeVariance = 0;
+            double covariance = 0;
+            for (int i = 0; i < count; i++) {
+                sizeVariance += (sizes[i] - meanSize) * (sizes[i] - meanSize);
+                covariance += (sizes[i] - meanSize) * (transferTimes[i] - meanTime);
+            }
+            boolean spread = Math.sqrt(sizeVariance / count) >= MIN_SIZE_SPREAD * meanSize;
+            // Milliseconds per byte, which only makes sense when bigger uploads took longer
+            double slope = sizeVariance > 0 ? covariance / sizeVariance : 0;
+            if (spread && slope > 0) {
+                rttMillis = Math.max(0, Math.min(minTime, meanTime - slope * meanSize));
+                fittedRttMillis = rttMillis;
+                bandwidthKbps = clampBandwidth(8 / slope);
+                return;
+            }
+        }
+        // Keeps the assumed round-trip time, which cannot be longer than the quickest upload,
+        // and puts the rest of the time down to the transfer
+        rttMillis = Math.min(fittedRttMillis, minTime);
+        double transferMillis = Math.max(1, meanTime - rttMillis);
+        bandwidthKbps = clampBandwidth(meanSize * 8 / transferMillis);
+    }
+
+    // Fits the round-trip time, server time and bandwidth together, returning false if the uploads
+    // do not differ enough in bytes per second of audio to tell server time from transfer time
+    private boolean fitWithServerTime() {
+        double meanRate = 0;
+        for (int i = 0; i < count; i++) {
+            meanRate += (double) sizes[i] / audioMillis[i];
+        }
+        meanRate /= count;
+        double rateVariance = 0;
+        for (int i = 0; i < count; i++) {
+            double rate = (double) sizes[i] / audioMillis[i];
+            rateVariance += (rate - meanRate) * (rate - meanRate);
+        }
+        if (Math.sqrt(rateVariance / count) < MIN_SIZE_SPREAD * meanRate) {
+            return false;
+        }
+
+        // Least squares on time = rtt + a * audioMillis + b * bytes, solved on the centred values
+        double meanSize = 0;
+        double meanAudio = 0;
+        double meanTime = 0;
+        for (int i = 0; i < count; i++) {
+            meanSize += sizes[i];
+            meanAudio += audioMillis[i];
+            meanTime += times[i];
+        }
+        meanSize /= count;
+        meanAudio /= count;
+        meanTime /= count;
+        double sizeSize = 0;
+        double sizeAudio = 0;
+        double audioAudio = 0;
+        double sizeTime = 0;
+        double audioTime = 0;
+        for (int i = 0; i < count; i++) {
+            double size = sizes[i] - meanSize;
+            double audio = audioMillis[i] - meanAudio;
+            double time = times[i] - meanTime;
+            sizeSize += size * size;
+            sizeAudio += size * audio;
+            audioAudio += audio * audio;
+            sizeTime += size * time;
+            audioTime += audio * time;
+        }
+        double determinant = sizeSize * audioAudio - sizeAudio * sizeAudio;
+        if (determinant <= 0) {
+            return false;
+        }
+        double perByte = (audioAudio * sizeTime - sizeAudio * audioTime) / determinant;
+        double perAudioMilli = (sizeSize * audioTime - sizeAudio * sizeTime) / determinant;
+        // A fast link can measure as a tiny negative transfer time per byte, which just means no measurable cost
+        perByte = Math.max(perByte, 8 / MAX_BANDWIDTH_KBPS);
+        perAudioMilli = Math.max(0, perAudioMilli);
+
+        serverMillisPerSecond = perAudioMilli * 1000;
+        serverTimeMeasured = true;
+        rttMillis = Math.max(0, meanTime - perAudioMilli * meanAudio - perByte * meanSize);
+        fittedRttMillis = rttMillis;
+        bandwidthKbps = clampBandwidth(8 / perByte);
+        return true;
+    }
+
+    private static double clampBandwidth(double kbps) {
+        return Math.max(MIN_BANDWIDTH_KBPS, Math.min(MAX_BANDWIDTH_KBPS, kbps));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.speechtranslator;
+
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Translates with the Cloud Translation API, sending many segments in a single request
+// Talks to the REST endpoint directly, so tests can point it at a local stand-in server
+public class CloudTranslationBackend implements TranslationBackend {
+    public static final String DEFAULT_ENDPOINT = "https://translation.googleapis.com/language/translate/v2";
+    private static final String SCOPE = "https://www.googleapis.com/auth/cloud-translation";
+    // Per-request limits of the API; larger batches are split over several requests
+    private static final int MAX_SEGMENTS_PER_REQUEST = 128;
+    private static final int MAX_CHARACTERS_PER_REQUEST = 30000;
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    private final URL endpoint;
+    // Null when the endpoint needs no authorization, such as a test server
+    private final GoogleCredentials credentials;
+
+    public CloudTranslationBackend(String endpoint, GoogleCredentials credentials) throws IOException {
+        this.endpoint = new URL(endpoint);
+        this.credentials = credentials == null ? null : credentials.createScoped(Collections.singletonList(SCOPE));
+    }
+
+    public List<String> translate(String fromCode, String toCode, List<String> segments) throws IOException {
+        List<String> translations = new ArrayList<>(segments.size());
+        int start = 0;
+        while (start < segments.size()) {
+            // Takes as many segments as fit in one request, but always at least one
+            int end = start;
+            int characters = 0;
+            while (end < segments.size() && end - start < MAX_SEGMENTS_PER_REQUEST
+                    && (end == start || characters + segments.get(end).length() <= MAX_CHARACTERS_PER_REQUEST)) {
+                characters += segments.get(end).length();
+                end++;
+            }
+            translations.addAll(translateRequest(fromCode, toCode, segments.subList(start, end)));
+            start = end;
+        }
+        return translations;
+    }
+
+    // Sends one request and returns its translations in segment order
+    private List<String> translateRequest(String fromCode, String toCode, List<String> segments) throws IOException {
+        JsonArray query = new JsonArray();
+        for (String segment : segments) {
+            query.add(segment);
+        }
+        JsonObject body = new JsonObject();
+        body.add("q", query);
+        body.addProperty("source", fromCode);
+        body.addProperty("target", toCode);
+        // Plain text, so the results come back without HTML escaping
+        body.addProperty("format", "text");
+        byte[] requestBytes = body.toString().getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(requestBytes.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            if (credentials != null) {
+                credentials.refreshIfExpired();
+                connection.setRequestProperty("Authorization", "Bearer " + credentials.getAccessToken().getTokenValue());
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(requestBytes);
+            }
+
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Cloud Translation returned " + status + ": " + readError(connection));
+            }
+            JsonArray results;
+            try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                results = JsonParser.parseReader(reader).getAsJsonObject()
+                        .getAsJsonObject("data")
+                        .getAsJsonArray("translations");
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed Cloud Translation response", e);
+            }
+            if (results.size() != segments.size()) {
+                throw new IOException("Expected " + segments.size() + " translations, got " + results.size());
+            }
+
+            List<String> translations = new ArrayList<>(results.size());
+            for (JsonElement result : results) {
+                translations.add(result.getAsJsonObject().get("translatedText").getAsString());
+            }
+            return translations;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String readError(HttpURLConnection connection) {
+        try (InputStream error = connection.getErrorStream()) {
+            if (error == null) {
+                return "";
+            }
+            byte[] buffer = new byte[1024];
+            int length = error.read(buffer);
+            return length > 0 ? new String(buffer, 0, length, StandardCharsets.UTF_8) : "";
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+}
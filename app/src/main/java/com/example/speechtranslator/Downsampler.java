@@ -0,0 +1,92 @@
+package com.example.speechtranslator;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Halves the sample rate of 16-bit little-endian mono PCM, for sending 16 kHz captures as 8 kHz
+// A low-pass filter removes everything above the new Nyquist frequency first, so it does not alias
+// into the speech band
+public class Downsampler {
+    // Number of filter taps, odd so the filter is symmetric around one sample
+    private static final int TAPS = 31;
+    // Cutoff as a fraction of the input rate, a little under the new Nyquist frequency of 0.25
+    private static final double CUTOFF = 0.22;
+    // Bytes read from the input at a time
+    private static final int BLOCK_BYTES = 4096;
+    private static final float[] FILTER = createFilter();
+
+    private Downsampler() {}
+
+    // Reads the audio in blocks, so a spilled utterance is not copied onto the heap first
+    public static ByteString halveSampleRate(ByteString pcm) throws IOException {
+        int inputSamples = pcm.size() / 2;
+        byte[] out = new byte[inputSamples / 2 * 2];
+        // Ring of the last TAPS input samples, twice over so the filter reads them without wrapping
+        float[] history = new float[2 * TAPS];
+        int position = 0;
+        int read = 0;
+        int written = 0;
+        byte[] block = new byte[BLOCK_BYTES];
+        try (InputStream in = pcm.newInput()) {
+            while (read < inputSamples) {
+                int length = readFully(in, block, Math.min(BLOCK_BYTES, (inputSamples - read) * 2));
+                if (length < 2) {
+                    break;
+                }
+                for (int i = 0; i + 1 < length; i += 2) {
+                    float sample = (short) ((block[i] & 0xFF) | (block[i + 1] << 8));
+                    history[position] = sample;
+                    history[position + TAPS] = sample;
+                    position = (position + 1) % TAPS;
+                    read++;
+                    // Keeps every second filtered sample
+                    if ((read & 1) == 0) {
+                        float sum = 0;
+                        for (int k = 0; k < TAPS; k++) {
+                            sum += FILTER[k] * history[position + k];
+                        }
+                        short value = AudioFilter.clip(sum);
+                        out[written++] = (byte) value;
+                        out[written++] = (byte) (value >> 8);
+                    }
+                }
+            }
+        }
+        return UnsafeByteOperations.unsafeWrap(out, 0, written);
+    }
+
+    // Fills block up to length bytes, so a read that stops at the boundary between two parts of the audio
+    // does not split a sample
+    private static int readFully(InputStream in, byte[] block, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int count = in.read(block, total, length - total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    // Windowed-sinc low-pass filter with unity gain at DC
+    private static float[] createFilter() {
+        float[] filter = new float[TAPS];
+        int middle = TAPS / 2;
+        double sum = 0;
+        for (int i = 0; i < TAPS; i++) {
+            int n = i - middle;
+            double sinc = n == 0 ? 2 * CUTOFF : Math.sin(2 * Math.PI * CUTOFF * n) / (Math.PI * n);
+            double window = 0.54 - 0.46 * Math.cos(2 * Math.PI * i / (TAPS - 1));
+            filter[i] = (float) (sinc * window);
+            sum += filter[i];
+        }
+        for (int i = 0; i < TAPS; i++) {
+            filter[i] /= sum;
+        }
+        return filter;
+    }
+}
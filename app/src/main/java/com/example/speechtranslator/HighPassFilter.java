@@ -0,0 +1,38 @@
+package com.example.speechtranslator;
+
+// First-order high-pass filter that removes DC offset and low-frequency rumble
+// Handling noise, wind and mic offset mostly sit below the cutoff, while speech sits well above it
+public class HighPassFilter implements AudioFilter {
+    private final float cutoffHz;
+    private float coefficient;
+    private float previousInput;
+    private float previousOutput;
+
+    public HighPassFilter(float cutoffHz) {
+        this.cutoffHz = cutoffHz;
+    }
+
+    public void reset(int sampleRate) {
+        // y[n] = a * (y[n-1] + x[n] - x[n-1]) with a = RC / (RC + dt)
+        float rc = (float) (1 / (2 * Math.PI * cutoffHz));
+        float dt = 1f / sampleRate;
+        coefficient = rc / (rc + dt);
+        previousInput = 0;
+        previousOutput = 0;
+    }
+
+    public void process(short[] samples, int count) {
+        float a = coefficient;
+        float x1 = previousInput;
+        float y1 = previousOutput;
+        for (int i = 0; i < count; i++) {
+            float x = samples[i];
+            float y = a * (y1 + x - x1);
+            samples[i] = AudioFilter.clip(y);
+            x1 = x;
+            y1 = y;
+        }
+        previousInput = x1;
+        previousOutput = y1;
+    }
+}
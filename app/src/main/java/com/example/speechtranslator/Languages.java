@@ -0,0 +1,98 @@
+package com.example.speechtranslator;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Maps the language names shown in the spinners to the codes each Google API expects
+public final class Languages {
+    // Spinner item that lets Speech-to-Text work out the spoken language
+    public static final String AUTO_DETECT = "Auto-detect";
+    // Languages offered in the spinners, in the order they are shown
+    public static final List<String> ALL = Arrays.asList("English", "Vietnamese", "Spanish", "Mandarin", "Cantonese", "French", "Arabic");
+
+    private Languages() {
+    }
+
+    // Language code used by Speech-to-Text recognition
+    public static String recognitionCode(String language) {
+        switch (language) {
+            case "English":
+                return "en-US";
+            case "Vietnamese":
+                return "vi-VN";
+            case "Spanish":
+                return "es-US";
+            case "Mandarin":
+                return "cmn-Hans-CN";
+            case "Cantonese":
+                return "yue-Hant-HK";
+            case "French":
+                return "fr-FR";
+            case "Arabic":
+                return "ar-IQ";
+            default:
+                return "";
+        }
+    }
+
+    // Language name for a code reported by Speech-to-Text, which may differ in case or region from the one sent
+    // Returns null for a language not offered in the spinners
+    public static String fromRecognitionCode(String code) {
+        for (String language : ALL) {
+            if (recognitionCode(language).equalsIgnoreCase(code)) {
+                return language;
+            }
+        }
+        String prefix = code.split("-")[0];
+        for (String language : ALL) {
+            if (recognitionCode(language).split("-")[0].equalsIgnoreCase(prefix)) {
+                return language;
+            }
+        }
+        return null;
+    }
+
+    // Language code used by ML Kit translation
+    // Mandarin and Cantonese share the same written Chinese model
+    public static String translationCode(String language) {
+        switch (language) {
+            case "English":
+                return "en";
+            case "Vietnamese":
+                return "vi";
+            case "Spanish":
+                return "es";
+            case "Mandarin":
+            case "Cantonese":
+                return "zh";
+            case "French":
+                return "fr";
+            case "Arabic":
+                return "ar";
+            default:
+                return "";
+        }
+    }
+
+    // Voice language code used by Text-to-Speech
+    public static String speechCode(String language) {
+        switch (language) {
+            case "English":
+                return "en-US";
+            case "Vietnamese":
+                return "vi-VN";
+            case "Spanish":
+                return "es-US";
+            case "Mandarin":
+                return "cmn-CN";
+            case "Cantonese":
+                return "yue-HK";
+            case "French":
+                return "fr-FR";
+            case "Arabic":
+                return "ar-XA";
+            default:
+                return "";
+        }
+    }
+}
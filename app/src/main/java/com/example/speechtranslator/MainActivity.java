@@ -4,16 +4,29 @@ import static android.graphics.Color.*;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresPermission;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
 import android.Manifest;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
-import android.media.MediaPlayer;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.StrictMode;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
+import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.ProgressBar;
@@ -22,6 +35,8 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.speech.v1.RecognitionAudio;
 import com.google.cloud.speech.v1.RecognitionConfig;
@@ -32,16 +47,41 @@ import com.google.cloud.speech.v1.SpeechRecognitionResult;
 import com.google.cloud.speech.v1.SpeechSettings;
 
 import com.google.protobuf.ByteString;
-import java.io.ByteArrayOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainActivity extends AppCompatActivity {
     // Request code for audio recording permission
     private static final int REQUEST_RECORD_AUDIO_PERMISSION = 200;
+    // Sample rate of the captured audio, which may be sent to Speech-to-Text at a lower rate or compressed
+    private static final int RECOGNITION_SAMPLE_RATE = 16000;
+    // Upload time each utterance's audio profile is chosen to stay under
+    private static final long UPLOAD_TARGET_MILLIS = 1500;
+    // Number of queued utterances uploaded at once after reconnecting, and per drain round
+    private static final int MAX_CONCURRENT_UPLOADS = 2;
+    private static final int UPLOAD_BATCH_SIZE = 8;
+    // Number of utterances that can be recognized, translated and synthesized at the same time
+    private static final int MAX_IN_FLIGHT_UTTERANCES = 3;
+    // Translates with the Cloud Translation API instead of on-device ML Kit models
+    private static final boolean USE_CLOUD_TRANSLATION = false;
+    // Listens with a cheap energy detector between utterances to save battery on always-on devices
+    private static final boolean LOW_POWER_STANDBY = true;
+    // Removes rumble and evens out speaker loudness before voice detection and recognition
+    private static final boolean PREPROCESS_AUDIO = true;
     // Button to start - stop recording
     private Button startButton;
     // Displays transcription result
@@ -49,50 +89,193 @@ public class MainActivity extends AppCompatActivity {
     // Indicates loading during transcription
     private ProgressBar progressBar;
     private Spinner spinnerFrom, spinnerTo;
+    // Opens the list of languages translated into alongside spinnerTo
+    private Button extraTargetsButton;
+    // Extra target languages, written on the UI thread and read when an utterance starts
+    private final List<String> extraTargets = new CopyOnWriteArrayList<>();
+    // Translates and synthesizes each target language of an utterance at the same time
+    private final ExecutorService targetExecutor = Executors.newCachedThreadPool();
     // Flag to track if recording permission is granted
     private boolean permissionToRecordAccepted = false;
     // Asks for permission to record audio
     private String[] permissions = {Manifest.permission.RECORD_AUDIO};
-    // Thread to handle network call for transcription
-    private Thread recordingThread;
-    // Byte array to add recorded audio data
-    private byte[] byteArray;
-    // Instance of VoiceRecorder class
+    // Runs recorded utterances through recognition, translation and speech, delivering them in order
+    // Created off the main thread, so null until servicesReady opens
+    private volatile UtterancePipeline pipeline;
+    // Utterance currently being recorded, only touched by VoiceRecorder callbacks
+    private Utterance currentUtterance;
+    // Instance of VoiceRecorder class, only touched on recorderExecutor
     private VoiceRecorder thisVoiceRecorder;
-    // Media Player to play audio
-    private MediaPlayer mediaPlayer;
+    // Learns the speaker's pauses, kept for the whole run so each Start does not begin from scratch
+    // Only used by one recorder's capture thread at a time
+    private final AdaptiveEndpointer endpointer = new AdaptiveEndpointer();
+    // Plays translated speech straight from memory, one utterance after another
+    private SpeechPlayer speechPlayer;
+    // Synthesizes translated speech, created off the main thread with the other clients
+    private TextToSpeech textToSpeech;
+    // Plays the completion sound, which is loaded once up front
+    private SoundPool soundPool;
+    private int completionSoundId;
+    private volatile boolean completionSoundLoaded;
     private SpeechClient speechClient;
+    // Holds utterances that could not be transcribed while offline
+    private UploadQueue uploadQueue;
+    // Loads credentials, restores the upload queue and does file writes, keeping disk access off the main thread
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    // Starts and stops the recorder in order, since stopping waits for a capture read to finish
+    private final ExecutorService recorderExecutor = Executors.newSingleThreadExecutor();
+    // Opens once the clients, pipeline and upload queue have been created on backgroundExecutor
+    private final CountDownLatch servicesReady = new CountDownLatch(1);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Utterances delivered since the last frame, guarded by itself
+    // Whatever arrives within one frame is rendered together
+    private final List<Utterance> pendingResults = new ArrayList<>();
+    private boolean renderScheduled;
+    // Identifies utterances recorded during this run of the app in the upload queue
+    private final String sessionId = UUID.randomUUID().toString();
+    private ConnectivityManager connectivityManager;
+    // Downloads and warms up translation models before they are needed
+    // Created on backgroundExecutor, since it opens its preferences file; null until then
+    private volatile TranslationModelManager modelManager;
+    // Translates batches of transcript segments, either on the device or in the cloud
+    private TranslationBackend translationBackend;
+    // Source languages most recently detected or picked, tried first when auto-detecting
+    // The device's language is tried first until one has been detected or picked
+    private final SourceLanguageCache sourceLanguages = new SourceLanguageCache(Languages.ALL, getDeviceLanguage());
+    // Learns how fast recognition requests upload, to pick how each utterance's audio is sent
+    private final BandwidthEstimator uploadBandwidth = new BandwidthEstimator();
+    // Recognition requests currently uploading, which share the uplink
+    private final AtomicInteger uploadsInFlight = new AtomicInteger();
+    // Whether the device can compress audio to AMR-WB, checked once at startup
+    private volatile boolean amrWbAvailable;
+    // Pairs up the start and end of asynchronous sections in traces
+    private final AtomicInteger nextTraceCookie = new AtomicInteger();
+
+    // Uploads queued utterances again as soon as a network becomes available
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(@NonNull Network network) {
+            // Measurements from the previous network say nothing about this one
+            uploadBandwidth.reset();
+            uploadQueue.drain();
+        }
+
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+            uploadBandwidth.setLinkEstimate(capabilities.getLinkUpstreamBandwidthKbps());
+        }
+    };
+
+    // Transcribes a queued utterance and continues with translation and speech as if it was just recorded
+    // Queued results are shown out of band as soon as they are ready, not through the pipeline's ordering:
+    // their sequence numbers come from the upload queue, and they were spoken before anything live
+    private final UploadQueue.Uploader queuedRecordingUploader = new UploadQueue.Uploader() {
+        public void upload(UploadQueue.Entry entry) throws Exception {
+            Utterance utterance = new Utterance(entry.getSequence(), entry.getLanguageFrom(),
+                    Arrays.asList(entry.getLanguageTo().split(",")), null);
+            // Only a failed recognition is retried, since retrying after it succeeded would pay for it twice
+            recognize(utterance, UnsafeByteOperations.unsafeWrap(entry.readAudio()));
+            try {
+                translateAndSpeak(utterance);
+            } catch (Exception e) {
+                // Reported the same way as for a live utterance
+                Log.e("UploadQueue", "Translation of queued utterance " + entry.getSequence() + " failed: " + e.getMessage());
+                utterance.setMessage("Could not translate");
+            }
+            showUtterance(utterance);
+        }
+
+        // Retries only failures to reach Speech-to-Text; a request it rejects would be rejected again
+        public boolean isRetryable(Exception e) {
+            if (e instanceof ApiException) {
+                StatusCode.Code code = ((ApiException) e).getStatusCode().getCode();
+                return code == StatusCode.Code.UNAVAILABLE || code == StatusCode.Code.DEADLINE_EXCEEDED
+                        || code == StatusCode.Code.RESOURCE_EXHAUSTED;
+            }
+            return e instanceof IOException;
+        }
+    };
+
+    // Recognizes, translates and synthesizes one utterance on a pipeline worker thread
+    private final UtterancePipeline.Processor utteranceProcessor = new UtterancePipeline.Processor() {
+        public void process(Utterance utterance) throws Exception {
+            // Reads the audio in place, even when most of it is in the spill file
+            ByteString data = utterance.getAudio();
+            // Without a network the request can only fail, so the utterance goes straight to the queue
+            if (!isNetworkConnected()) {
+                queueRecording(utterance, data);
+                return;
+            }
+            try {
+                recognize(utterance, data);
+            } catch (Exception e) {
+                Log.e("STT", " " + e.getMessage());
+                if (queuedRecordingUploader.isRetryable(e)) {
+                    // Keeps the audio so it can be transcribed once Speech-to-Text can be reached
+                    queueRecording(utterance, data);
+                } else {
+                    // Would be rejected again from the queue, so it is reported now instead
+                    utterance.setMessage("Could not transcribe");
+                }
+                return;
+            }
+            translateAndSpeak(utterance);
+        }
+    };
+
+    // Shows finished utterances, which the pipeline hands over in the order they were spoken
+    private final UtterancePipeline.Listener utteranceListener = new UtterancePipeline.Listener() {
+        public void onUtteranceDelivered(Utterance utterance) {
+            showUtterance(utterance);
+        }
+    };
 
     // Implementation of onVoiceListener interface to receive callbacks from VoiceRecorder
     private final VoiceRecorder.onVoiceListener thisVoiceListener = new VoiceRecorder.onVoiceListener() {
 
         // Called when VoiceRecorder starts detecting voice
-        public void onVoiceStart() {}
+        // Each utterance gets its own buffer and sequence number, and keeps the languages it was spoken in
+        public void onVoiceStart() {
+            currentUtterance = pipeline.newUtterance(spinnerFrom.getSelectedItem().toString(), getTargetLanguages());
+        }
 
         // Called repeatedly while VoiceRecorder is actively recording voice data
         public void onVoice(byte[] data, int size) {
-            byteArray = appendByteArrays(byteArray, data);
+            currentUtterance.append(data, size);
         }
 
         // Called when VoiceRecorder stops detecting voice activity
         public void onVoiceEnd() {
-            // Shows progress bar on UI thread to show that transcription is in progress
-            runOnUiThread(new Runnable() {
-                public void run() {
-                    progressBar.setVisibility(View.VISIBLE);
-                }
-            });
-            // Logs the recorded byte array for debugging
-            Log.e("ByteArray", "" + byteArray);
-            // Starts the transcription process with audio data
-            transcribeRecording(byteArray);
-
+            Utterance utterance = currentUtterance;
+            currentUtterance = null;
+            if (utterance == null) {
+                return;
+            }
+            // Records the utterance size for tracing
+            Tracer.instant(Tracer.VOICE_END, utterance.getAudioLength());
+            // Starts the transcription process while recording carries on with the next utterance
+            pipeline.submit(utterance);
+            // The next frame shows the progress bar to show that transcription is in progress
+            scheduleRender();
         }
     };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Debug builds crash on any disk or network access on the main thread, after logging it
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectAll()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedClosableObjects()
+                    .detectActivityLeaks()
+                    .penaltyLog()
+                    .build());
+        }
         setContentView(R.layout.activity_main);
         // Initializes UI elements
         startButton = findViewById(R.id.start_button);
@@ -100,12 +283,56 @@ public class MainActivity extends AppCompatActivity {
         progressBar = findViewById(R.id.progress_bar);
         spinnerFrom = findViewById(R.id.spinnerFrom);
         spinnerTo = findViewById(R.id.spinnerTo);
-        List<String> languages = Arrays.asList("English", "Vietnamese", "Spanish", "Mandarin", "Cantonese", "French", "Arabic");
-        ArrayAdapter adapter = new ArrayAdapter(getApplicationContext(), R.layout.menu, languages);
+        extraTargetsButton = findViewById(R.id.extra_targets_button);
+        // The source language can also be left for Speech-to-Text to detect
+        // It only listens for MAX_CANDIDATES languages at a time, so it is opt-in and the device's language is the default
+        List<String> sourceChoices = new ArrayList<>();
+        sourceChoices.add(Languages.AUTO_DETECT);
+        sourceChoices.addAll(Languages.ALL);
+        ArrayAdapter fromAdapter = new ArrayAdapter(getApplicationContext(), R.layout.menu, sourceChoices);
+        ArrayAdapter adapter = new ArrayAdapter(getApplicationContext(), R.layout.menu, Languages.ALL);
         spinnerFrom.setDropDownWidth(R.layout.menu);
         spinnerTo.setDropDownWidth(R.layout.menu);
-        spinnerFrom.setAdapter(adapter);
+        spinnerFrom.setAdapter(fromAdapter);
         spinnerTo.setAdapter(adapter);
+        String deviceLanguage = getDeviceLanguage();
+        spinnerFrom.setSelection(sourceChoices.indexOf(deviceLanguage != null ? deviceLanguage : Languages.ALL.get(0)));
+        // Starts preparing the translation models as soon as the user picks a language pair
+        AdapterView.OnItemSelectedListener languageSelectedListener = new AdapterView.OnItemSelectedListener() {
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                // A language picked by hand is the best guess for auto-detect later on
+                String languageFrom = spinnerFrom.getSelectedItem().toString();
+                if (parent == spinnerFrom && !languageFrom.equals(Languages.AUTO_DETECT)) {
+                    sourceLanguages.remember(languageFrom);
+                } else if (parent == spinnerFrom) {
+                    // Says which languages will be listened for, since the others cannot be detected
+                    Toast.makeText(getApplicationContext(), "Auto-detect listens for "
+                            + String.join(", ", sourceLanguages.getCandidates(getTargetLanguages())), Toast.LENGTH_LONG).show();
+                }
+                prepareTargetModels();
+            }
+
+            public void onNothingSelected(AdapterView<?> parent) {}
+        };
+        spinnerFrom.setOnItemSelectedListener(languageSelectedListener);
+        spinnerTo.setOnItemSelectedListener(languageSelectedListener);
+        // Loads the completion sound now so playing it later is instant
+        soundPool = new SoundPool.Builder()
+                .setMaxStreams(1)
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .build();
+        soundPool.setOnLoadCompleteListener((pool, sampleId, status) -> completionSoundLoaded = status == 0);
+        completionSoundId = soundPool.load(this, R.raw.audio, 1);
+        speechPlayer = new SpeechPlayer(TextToSpeech.SAMPLE_RATE);
+        // Lets the user pick more languages to hear each utterance in
+        extraTargetsButton.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                chooseExtraTargets();
+            }
+        });
         // Requests audio recording permission from user
         ActivityCompat.requestPermissions(this, permissions, REQUEST_RECORD_AUDIO_PERMISSION);
         // Sets an OnClickListener for startButton
@@ -119,24 +346,168 @@ public class MainActivity extends AppCompatActivity {
                     Toast.makeText(getApplicationContext(), languageTo, Toast.LENGTH_SHORT).show();
 
                     // Checks if audio recording permission is granted
+                    // Keeps recording utterance after utterance until stopped, so fast talkers are not cut off
                     if (startButton.getText().toString().equals("Start")) {
-                        startButton.setText("Loading...");
+                        startButton.setText("Stop");
                         startButton.setBackgroundColor(RED);
-                        // Disables button to prevent further clicks
-                        startButton.setEnabled(false);
                         startVoiceRecorder();
                     } else {
-                        // Stops recording
+                        // Stops recording; utterances already captured still finish
                         stopVoiceRecorder();
-                        startButton.setText("Start");
+                        startButton.setBackgroundColor(Color.GREEN);
                     }
                 } else {
                     Log.w("MainActivity", "Permission not granted");
                 }
             }
         });
-        // Initializes connection to Google Cloud Speech-to-Text API
-        initializeSpeechClient();
+        // Long-pressing startButton starts tracing, and long-pressing again saves the trace to a file
+        startButton.setOnLongClickListener(new View.OnLongClickListener() {
+            public boolean onLongClick(View v) {
+                toggleTracing();
+                return true;
+            }
+        });
+        connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        String fromCode = Languages.translationCode(getSourceLanguageGuess());
+        String toCode = Languages.translationCode(spinnerTo.getSelectedItem().toString());
+        backgroundExecutor.execute(() -> {
+            modelManager = new TranslationModelManager(this);
+            // Picks up any language chosen while the manager did not exist yet
+            runOnUiThread(this::prepareTargetModels);
+            // Initializes connection to Google Cloud Speech-to-Text API
+            initializeSpeechClient();
+            initializeTranslationBackend();
+            initializeTextToSpeech();
+            amrWbAvailable = AmrWbEncoder.isAvailable();
+            pipeline = new UtterancePipeline(MAX_IN_FLIGHT_UTTERANCES, new File(getCacheDir(), "utterances"),
+                    utteranceProcessor, utteranceListener);
+            // Restores utterances left over from earlier sessions and starts watching connectivity
+            uploadQueue = new UploadQueue(new File(getFilesDir(), "upload_queue"), queuedRecordingUploader,
+                    MAX_CONCURRENT_UPLOADS, UPLOAD_BATCH_SIZE);
+            connectivityManager.registerDefaultNetworkCallback(networkCallback);
+            servicesReady.countDown();
+            // Prefetches the pairs used most in earlier sessions
+            modelManager.warmUp(fromCode, toCode);
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        stopVoiceRecorder();
+        // Queued behind the recorder's stop, which can still hand a last utterance to the pipeline,
+        // so the pipeline is only shut down once nothing more can be submitted to it
+        recorderExecutor.execute(() -> {
+            // Runs after startup has finished, since backgroundExecutor handles one task at a time
+            backgroundExecutor.execute(() -> {
+                connectivityManager.unregisterNetworkCallback(networkCallback);
+                // Queued utterances stay on disk and are picked up again on the next launch
+                uploadQueue.shutdown();
+                pipeline.shutdown();
+                targetExecutor.shutdownNow();
+                modelManager.close();
+                if (textToSpeech != null) {
+                    textToSpeech.close();
+                }
+            });
+            backgroundExecutor.shutdown();
+        });
+        recorderExecutor.shutdown();
+        soundPool.release();
+        speechPlayer.shutdown();
+    }
+
+    // Shows a checklist of languages to translate into besides the one in spinnerTo
+    private void chooseExtraTargets() {
+        String[] names = Languages.ALL.toArray(new String[0]);
+        boolean[] checked = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            checked[i] = extraTargets.contains(names[i]);
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Also translate to")
+                .setMultiChoiceItems(names, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton("OK", (dialog, which) -> {
+                    List<String> chosen = new ArrayList<>();
+                    for (int i = 0; i < names.length; i++) {
+                        if (checked[i]) {
+                            chosen.add(names[i]);
+                        }
+                    }
+                    extraTargets.clear();
+                    extraTargets.addAll(chosen);
+                    extraTargetsButton.setText(chosen.isEmpty() ? "+ More languages" : "Also: " + String.join(", ", chosen));
+                    prepareTargetModels();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    // The spinnerTo language followed by any extra targets, without duplicates
+    private List<String> getTargetLanguages() {
+        List<String> targets = new ArrayList<>();
+        targets.add(spinnerTo.getSelectedItem().toString());
+        for (String language : extraTargets) {
+            if (!targets.contains(language)) {
+                targets.add(language);
+            }
+        }
+        return targets;
+    }
+
+    // The offered language the device is set to, or null if it is not one of them
+    private static String getDeviceLanguage() {
+        return Languages.fromRecognitionCode(Locale.getDefault().toLanguageTag());
+    }
+
+    // The spinnerFrom language, or the most likely one when auto-detecting
+    private String getSourceLanguageGuess() {
+        String languageFrom = spinnerFrom.getSelectedItem().toString();
+        if (languageFrom.equals(Languages.AUTO_DETECT)) {
+            return sourceLanguages.getCandidates(getTargetLanguages()).get(0);
+        }
+        return languageFrom;
+    }
+
+    // Starts preparing the translation models for every selected target
+    // Does nothing until startup has created the model manager, which then calls this itself
+    private void prepareTargetModels() {
+        TranslationModelManager modelManager = this.modelManager;
+        if (modelManager == null) {
+            return;
+        }
+        String fromCode = Languages.translationCode(getSourceLanguageGuess());
+        for (String language : getTargetLanguages()) {
+            String toCode = Languages.translationCode(language);
+            if (!fromCode.equals(toCode)) {
+                modelManager.prepare(fromCode, toCode, false);
+            }
+        }
+    }
+
+    // Starts tracing, or writes the trace collected so far to the app's files directory and stops
+    private void toggleTracing() {
+        if (!Tracer.isEnabled()) {
+            // Debuggable builds also emit system trace sections for Perfetto and systrace
+            Tracer.setSystemTraceEnabled((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+            Tracer.setEnabled(true);
+            Toast.makeText(getApplicationContext(), "Tracing started", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Tracer.setEnabled(false);
+        long stoppedMillis = System.currentTimeMillis();
+        backgroundExecutor.execute(() -> {
+            // Resolving the files directory touches the disk, so it is not done on the UI thread
+            File traceFile = new File(getFilesDir(), "trace-" + stoppedMillis + ".bin");
+            try {
+                Tracer.dump(traceFile);
+                runOnUiThread(() -> Toast.makeText(getApplicationContext(),
+                        "Trace saved to " + traceFile.getName(), Toast.LENGTH_SHORT).show());
+            } catch (IOException e) {
+                Log.e("Tracer", "Could not save trace: " + e.getMessage());
+            }
+        });
     }
 
     // Initializes SpeechClient for interacting with Google Cloud Speech-to-Text API
@@ -154,293 +525,372 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    // Sends recorded audio data to Google Cloud Speech-to-Text API for transcription
-    private void transcribeRecording(byte[] data) {
+    // Creates the Text-to-Speech client once, so synthesis does not load credentials for every utterance
+    private void initializeTextToSpeech() {
         try {
-            Log.d("API_CALL", "API CALL STARTED..."); // Logs when API call starts
-
-            // Creates new thread to perform network operation - API call
-            recordingThread = new Thread(new Runnable() {
-                public void run() {
-                    try {
-                        // Calls the Speech-to-Text API to recognize audio
-                        // speechClient.recognize = sends audio data to Google Cloud Speech-to-Text service
-                        // createRecognizeRequestFromVoice = takes recorded audio data (byte array) and creates
-                        // a RecognizeRequest object, which includes audio content, desired audio encoding
-                        // sample rate, and language code for transcription
-                        // recognize() returns a RecognizeResponse object - contains result of transcription
-                        // including a list of possible transcriptions
-                        // also produces/contains a list of SpeechRecognitionResult objects
-                        RecognizeResponse response = speechClient.recognize(createRecognizeRequestFromVoice(data));
-
-                        StringBuilder transcriptBuilder = new StringBuilder();
-
-                        // Loops through list of recognition results in response
-                        // getResutlsList returns a list of SpeechRecogntionResult objects
-                        // Each of them represents a potential transcription of audio
-                        // with different confidence levels
-                        for (SpeechRecognitionResult result : response.getResultsList()) {
-                            // Gets the most likely transcription from first alternative
-                            String transcript = result.getAlternativesList().get(0).getTranscript();
-                            transcriptBuilder.append(transcript).append(" ");
-                            updateResult(transcript);
-                        }
+            textToSpeech = new TextToSpeech(this);
+        } catch (IOException e) {
+            Log.e("Init", "TTS unavailable: " + e.getMessage());
+        }
+    }
 
-                        String languageFrom = spinnerFrom.getSelectedItem().toString();
-                        String languageTo = spinnerTo.getSelectedItem().toString();
-
-                        // Instantiating TranslateText class from MainActivity
-                        // MainActivity is an Activity - subclass of Context
-                        // MainActivity.this provides reference to the Context associated with the currently
-                        // running MainActivity
-                        Translation translator;
-
-                        String fromCode = "";
-                        String toCode = "";
-
-                        if (languageFrom.equals("English")) {
-                            fromCode = "en";
-                        } else if (languageFrom.equals("Vietnamese")) {
-                            fromCode = "vi";
-                        } else if (languageFrom.equals("Spanish")) {
-                            fromCode = "es";
-                        } else if (languageFrom.equals("Mandarin") || languageTo.equals("Cantonese")) {
-                            fromCode = "zh";
-                        } else if (languageFrom.equals("French")) {
-                            fromCode = "fr";
-                        } else if (languageFrom.equals("Arabic")) {
-                            fromCode = "ar";
-                        }
+    // Uses the Cloud Translation API if enabled and its credentials load, and ML Kit otherwise
+    private void initializeTranslationBackend() {
+        if (USE_CLOUD_TRANSLATION) {
+            try {
+                GoogleCredentials credentials = GoogleCredentials.fromStream(getResources().openRawResource(R.raw.credentials));
+                translationBackend = new CloudTranslationBackend(CloudTranslationBackend.DEFAULT_ENDPOINT, credentials);
+                return;
+            } catch (IOException e) {
+                Log.e("Init", "Cloud translation unavailable, using ML Kit: " + e.getMessage());
+            }
+        }
+        translationBackend = new MlKitTranslationBackend(modelManager);
+    }
 
-                        if (languageTo.equals("English")) {
-                            toCode = "en";
-                        } else if (languageTo.equals("Vietnamese")) {
-                            toCode = "vi";
-                        } else if (languageTo.equals("Spanish")) {
-                            toCode = "es";
-                        } else if (languageTo.equals("Mandarin") || languageTo.equals("Cantonese")) {
-                            toCode = "zh";
-                        } else if (languageTo.equals("French")) {
-                            toCode = "fr";
-                        } else if (languageTo.equals("Arabic")) {
-                            toCode = "ar";
-                        }
+    // Sends recorded audio data to Google Cloud Speech-to-Text API and stores one transcript per result
+    // In auto-detect mode the candidate languages go in the same request, and the utterance
+    // takes on the language Speech-to-Text reports
+    // The audio is sent in whichever profile is expected to upload within UPLOAD_TARGET_MILLIS
+    private void recognize(Utterance utterance, ByteString data) {
+        boolean autoDetect = utterance.getLanguageFrom().equals(Languages.AUTO_DETECT);
+        List<String> candidates = autoDetect
+                ? sourceLanguages.getCandidates(utterance.getLanguagesTo())
+                : Collections.singletonList(utterance.getLanguageFrom());
+        // Calls the Speech-to-Text API to recognize audio
+        // speechClient.recognize = sends audio data to Google Cloud Speech-to-Text service
+        // createRecognizeRequestFromVoice = takes recorded audio data (ByteString) and creates
+        // a RecognizeRequest object, which includes audio content, desired audio encoding
+        // sample rate, and language code for transcription
+        // recognize() returns a RecognizeResponse object - contains result of transcription
+        // including a list of possible transcriptions
+        // also produces/contains a list of SpeechRecognitionResult objects
+        long audioMillis = data.size() * 1000L / (RECOGNITION_SAMPLE_RATE * 2);
+        AudioProfile profile = AudioProfile.choose(uploadBandwidth, audioMillis, UPLOAD_TARGET_MILLIS, amrWbAvailable);
+        long predictedMillis = uploadBandwidth.predictMillis(profile.estimateBytes(audioMillis), audioMillis);
+        long encodeStart = SystemClock.elapsedRealtime();
+        ByteString audio = encodeAudio(data, profile);
+        if (audio == null) {
+            // Sending the capture as it is still works, just more slowly
+            profile = AudioProfile.PCM_16K;
+            audio = data;
+        }
+        long encodeMillis = SystemClock.elapsedRealtime() - encodeStart;
+        RecognizeRequest request = createRecognizeRequestFromVoice(audio, profile, candidates);
+
+        int traceSection = Tracer.begin(Tracer.RECOGNIZE, audio.size());
+        long uploadStart = SystemClock.elapsedRealtime();
+        // Most uploads in flight at the start or the end of this one, a close enough measure of how
+        // much of the link it had
+        int concurrentUploads = uploadsInFlight.incrementAndGet();
+        RecognizeResponse response;
+        try {
+            response = speechClient.recognize(request);
+        } finally {
+            concurrentUploads = Math.max(concurrentUploads, uploadsInFlight.getAndDecrement());
+            Tracer.end(Tracer.RECOGNIZE, audio.size(), traceSection);
+        }
+        long uploadMillis = SystemClock.elapsedRealtime() - uploadStart;
+        // Includes recognition on the server, which the estimator separates out by the length of the audio
+        uploadBandwidth.onUpload(request.getSerializedSize(), audioMillis, uploadMillis, concurrentUploads);
+        // Logs each decision with what it cost and what it saved, to weigh accuracy against latency
+        Log.i("AudioQuality", String.format(Locale.US,
+                "utterance %d: %d ms audio as %s, %d of %d bytes, encoded in %d ms, request predicted %d ms took %d ms; "
+                        + "link now %.0f kbit/s, rtt %.0f ms, server %.0f ms per second of audio",
+                utterance.getSequence(), audioMillis, profile, audio.size(), data.size(), encodeMillis,
+                predictedMillis, uploadMillis, uploadBandwidth.getBandwidthKbps(), uploadBandwidth.getRttMillis(),
+                uploadBandwidth.getServerMillisPerSecond()));
+
+        List<String> transcripts = new ArrayList<>();
+        String detected = null;
+
+        // Loops through list of recognition results in response
+        // getResutlsList returns a list of SpeechRecogntionResult objects
+        // Each of them represents a potential transcription of audio
+        // with different confidence levels
+        for (SpeechRecognitionResult result : response.getResultsList()) {
+            // Gets the most likely transcription from first alternative
+            String transcript = result.getAlternativesList().get(0).getTranscript();
+            transcripts.add(transcript);
+            // Each result says which of the candidate languages it was recognized in
+            if (detected == null && !result.getLanguageCode().isEmpty()) {
+                detected = Languages.fromRecognitionCode(result.getLanguageCode());
+            }
+        }
+        utterance.setTranscriptSegments(transcripts);
+
+        if (autoDetect) {
+            if (detected == null) {
+                // Falls back to the primary candidate, which Speech-to-Text uses when it reports nothing else
+                // and which is never a target unless every candidate is; it is only a guess, so it is not remembered
+                detected = candidates.get(0);
+            } else {
+                // Later requests in this session try the detected language first
+                sourceLanguages.remember(detected);
+            }
+            utterance.setDetectedLanguage(detected);
+        }
+    }
 
-                        translator = new Translation(MainActivity.this, fromCode, toCode);
-
-                        translator.translateText(transcriptBuilder.toString(), new Translation.TranslationCallback() {
-                            @Override
-                            public void onSuccess(String translatedText) {
-                                updateResult(translatedText);
-                                try {
-                                    // Text to Speech process
-                                    TextToSpeech textToSpeech = new TextToSpeech();
-                                    String targetCode = "";
-                                    if (languageTo.equals("English")) {
-                                        targetCode = "en-US";
-                                    } else if (languageTo.equals("Vietnamese")) {
-                                        targetCode = "vi-VN";
-                                    } else if (languageTo.equals("Spanish")) {
-                                        targetCode = "es-US";
-                                    } else if (languageTo.equals("Mandarin")) {
-                                        targetCode = "cmn-CN";
-                                    } else if (languageTo.equals("Cantonese")) {
-                                        targetCode = "yue-HK";
-                                    } else if (languageTo.equals("French")) {
-                                        targetCode = "fr-FR";
-                                    } else if (languageTo.equals("Arabic")) {
-                                        targetCode = "ar-XA";
-                                    }
-
-                                    ByteString audioContents = textToSpeech.synthesizeText(translatedText, MainActivity.this, targetCode);
-                                    playAudio(audioContents);
-                                } catch (Exception e) {
-                                    Log.e("TTS", "failed: " + e.getMessage());
-                                }
-                            }
-
-                            @Override
-                            public void onError(Exception e) {
-                                Log.e("Translation", "Translation failed: " + e.getMessage());
-                            }
-                        });
-                    } catch (Exception e) {
-                        Log.e("STT", " " + e.getMessage());
-                    }
-                }
-            });
-            // Starts transcription thread
-            recordingThread.start();
+    // Writes an utterance to the upload queue so it is transcribed once the network is back
+    // The queue starts uploading it straight away if it was idle, so a brief outage does not leave it waiting
+    // for the next network change
+    private void queueRecording(Utterance utterance, ByteString data) {
+        try {
+            // All target languages are kept, separated by commas
+            uploadQueue.enqueue(sessionId, RECOGNITION_SAMPLE_RATE, utterance.getLanguageFrom(),
+                    String.join(",", utterance.getLanguagesTo()), data.toByteArray());
+            utterance.setMessage("Offline - will translate when connected");
+        } catch (IOException e) {
+            Log.e("UploadQueue", "Could not queue recording: " + e.getMessage());
+            utterance.setMessage("Could not save recording");
+        }
+    }
+
+    // Checks whether there is a network that can reach the internet
+    private boolean isNetworkConnected() {
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    // Translates an utterance's transcript into every target language and synthesizes each translation
+    // The targets run at the same time, so this takes about as long as the slowest one
+    // Fails only if every target failed; targets that did succeed are still shown and spoken
+    // Must be called off the UI thread, since translation results are delivered on it
+    private void translateAndSpeak(Utterance utterance) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Utterance.Target target : utterance.getTargets()) {
+            futures.add(targetExecutor.submit(() -> {
+                translateAndSpeak(utterance, target);
+                return null;
+            }));
+        }
+        Exception failure = null;
+        int failed = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                failed++;
+            }
+        }
+        if (failed == futures.size() && failure != null) {
+            throw failure;
+        }
+    }
+
+    // Translates and synthesizes one target language of an utterance, blocking until both are done
+    private void translateAndSpeak(Utterance utterance, Utterance.Target target) throws Exception {
+        String fromCode = Languages.translationCode(utterance.getLanguageFrom());
+        String toCode = Languages.translationCode(target.getLanguage());
+
+        // Detection can find the speaker already using a target language, which then needs no translation
+        if (fromCode.equals(toCode)) {
+            target.setTranslation(utterance.getTranscript());
+        } else {
+            translate(utterance, target, fromCode, toCode);
+        }
+
+        // The client is null if it could not be created at startup; the translation is then shown without speech
+        if (textToSpeech == null) {
+            Log.w("TTS", "Skipping speech, Text-to-Speech is not available");
+            return;
+        }
+        try {
+            // Text to Speech process
+            String translatedText = target.getTranslation();
+            int traceSection = Tracer.begin(Tracer.SYNTHESIZE, translatedText.length());
+            try {
+                target.setSpeech(textToSpeech.synthesizeText(translatedText,
+                        Languages.speechCode(target.getLanguage())));
+            } finally {
+                Tracer.end(Tracer.SYNTHESIZE, translatedText.length(), traceSection);
+            }
         } catch (Exception e) {
-            Log.e("SpeechTranslator", "failed" + e.getMessage());
+            // The translated text is still shown without speech
+            Log.e("TTS", "failed: " + e.getMessage());
+        }
+    }
+
+    // Translates all recognition results in one batch instead of one request per result
+    private void translate(Utterance utterance, Utterance.Target target, String fromCode, String toCode) throws Exception {
+        int traceCookie = nextTraceCookie.incrementAndGet();
+        int traceSection = Tracer.beginAsync(Tracer.TRANSLATE, traceCookie);
+        try {
+            List<String> translations = translationBackend.translate(fromCode, toCode, utterance.getTranscriptSegments());
+            target.setTranslation(String.join(" ", translations));
+        } catch (Exception e) {
+            Log.e("Translation", "Translation to " + target.getLanguage() + " failed: " + e.getMessage());
+            throw e;
+        } finally {
+            Tracer.endAsync(Tracer.TRANSLATE, traceCookie, traceSection);
+        }
+    }
+
+    // Re-encodes the 16 kHz capture for the profile, or returns null if that fails
+    // The capture itself is passed on as it is, so a spilled utterance is serialized straight from its mapping
+    private ByteString encodeAudio(ByteString data, AudioProfile profile) {
+        try {
+            switch (profile) {
+                case AMR_WB:
+                    return AmrWbEncoder.encode(data);
+                case PCM_8K:
+                    return Downsampler.halveSampleRate(data);
+                default:
+                    return data;
+            }
+        } catch (IOException e) {
+            Log.e("AudioQuality", "Could not encode audio as " + profile + ": " + e.getMessage());
+            return null;
         }
     }
 
     // Creates RecognizeRequest object to be sent to Google Cloud Speech-to-Text API
-    private RecognizeRequest createRecognizeRequestFromVoice(byte[] audioData) {
-        String fromLanguage = spinnerFrom.getSelectedItem().toString();
+    private RecognizeRequest createRecognizeRequestFromVoice(ByteString audioData, AudioProfile profile, List<String> languages) {
         // Creates RecognitionAudio object with recorded audio data as bytes
         RecognitionAudio audioBytes = RecognitionAudio.newBuilder()
-                .setContent(ByteString.copyFrom(audioData))
+                .setContent(audioData)
                 .build();
 
         // Creates RecognitionConfig object with audio encoding, sample rate, and language code
-        if (fromLanguage.equals("English")){
-            RecognitionConfig config = RecognitionConfig.newBuilder()
-                    .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                    .setSampleRateHertz(16000)
-                    .setLanguageCode("en-US")
-                    .build();
-
-            // Builds the RecognizeRequest with configuration and audio
-            return RecognizeRequest.newBuilder()
-                    .setConfig(config)
-                    .setAudio(audioBytes)
-                    .build();
-        } else if (fromLanguage.equals("Vietnamese")) {
-            RecognitionConfig config = RecognitionConfig.newBuilder()
-                    .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                    .setSampleRateHertz(16000)
-                    .setLanguageCode("vi-VN")
-                    .build();
-
-            // Builds the RecognizeRequest with configuration and audio
-            return RecognizeRequest.newBuilder()
-                    .setConfig(config)
-                    .setAudio(audioBytes)
-                    .build();
-        } else if (fromLanguage.equals("Spanish")) {
-            RecognitionConfig config = RecognitionConfig.newBuilder()
-                    .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                    .setSampleRateHertz(16000)
-                    .setLanguageCode("es-US")
-                    .build();
-
-            // Builds the RecognizeRequest with configuration and audio
-            return RecognizeRequest.newBuilder()
-                    .setConfig(config)
-                    .setAudio(audioBytes)
-                    .build();
-        } else if (fromLanguage.equals("Mandarin")) {
-            RecognitionConfig config = RecognitionConfig.newBuilder()
-                    .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                    .setSampleRateHertz(16000)
-                    .setLanguageCode("cmn-Hans-CN")
-                    .build();
-
-            // Builds the RecognizeRequest with configuration and audio
-            return RecognizeRequest.newBuilder()
-                    .setConfig(config)
-                    .setAudio(audioBytes)
-                    .build();
-        } else if (fromLanguage.equals("Cantonese")) {
-            RecognitionConfig config = RecognitionConfig.newBuilder()
-                    .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                    .setSampleRateHertz(16000)
-                    .setLanguageCode("yue-Hant-HK")
-                    .build();
-
-            // Builds the RecognizeRequest with configuration and audio
-            return RecognizeRequest.newBuilder()
-                    .setConfig(config)
-                    .setAudio(audioBytes)
-                    .build();
-        } else if (fromLanguage.equals("French")) {
-            RecognitionConfig config = RecognitionConfig.newBuilder()
-                    .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                    .setSampleRateHertz(16000)
-                    .setLanguageCode("fr-FR")
-                    .build();
-
-            // Builds the RecognizeRequest with configuration and audio
-            return RecognizeRequest.newBuilder()
-                    .setConfig(config)
-                    .setAudio(audioBytes)
-                    .build();
-        } else if (fromLanguage.equals("Arabic")) {
-            RecognitionConfig config = RecognitionConfig.newBuilder()
-                    .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                    .setSampleRateHertz(16000)
-                    .setLanguageCode("ar-IQ")
-                    .build();
-
-            // Builds the RecognizeRequest with configuration and audio
-            return RecognizeRequest.newBuilder()
-                    .setConfig(config)
-                    .setAudio(audioBytes)
-                    .build();
-        }
-
-        return null;
+        // The first language is the primary one and any others are alternatives Speech-to-Text may pick instead
+        RecognitionConfig.Builder config = RecognitionConfig.newBuilder()
+                .setEncoding(profile.isCompressed()
+                        ? RecognitionConfig.AudioEncoding.AMR_WB
+                        : RecognitionConfig.AudioEncoding.LINEAR16)
+                .setSampleRateHertz(profile.getSampleRate())
+                .setLanguageCode(Languages.recognitionCode(languages.get(0)));
+        for (String language : languages.subList(1, languages.size())) {
+            config.addAlternativeLanguageCodes(Languages.recognitionCode(language));
+        }
+
+        // Builds the RecognizeRequest with configuration and audio
+        return RecognizeRequest.newBuilder()
+                .setConfig(config)
+                .setAudio(audioBytes)
+                .build();
     }
 
-    // Updates result TextView with transcription on main UI thread
-    private void updateResult(final String transcript) {
-        runOnUiThread(new Runnable() {
-            public void run() {
-                progressBar.setVisibility(View.GONE); // Hides progress bar
-                playSound(); // Plays a sound to indicate transcription completion
-                resultTextView.setText(transcript); // Shows transcription on result TextView
-                clearByteArray(byteArray); // Clears byteArray to prepare for next recording
-                startButton.setEnabled(true);
-                startButton.setText("Start"); // Changes startButton back to Start
-                startButton.setBackgroundColor(Color.GREEN);
-                stopVoiceRecorder(); // Stops voice recorder
+    // Hands an utterance's results to the next frame, from any thread
+    private void showUtterance(final Utterance utterance) {
+        synchronized (pendingResults) {
+            pendingResults.add(utterance);
+        }
+        scheduleRender();
+    }
+
+    // Makes sure a render happens on the next frame, however many updates come in before it
+    private void scheduleRender() {
+        synchronized (pendingResults) {
+            if (renderScheduled) {
+                return;
             }
-        });
+            renderScheduled = true;
+        }
+        // Choreographer belongs to the main thread, so the callback is posted from there
+        mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(frameTimeNanos -> renderResults()));
     }
 
-    // Starts voice recording process
-    private void startVoiceRecorder() {
-        // Stops any current voice recorder if it's running
-        if (thisVoiceRecorder != null) {
-            thisVoiceRecorder.stop();
+    // Shows everything delivered since the last frame in a single update of the views
+    private void renderResults() {
+        List<Utterance> results;
+        synchronized (pendingResults) {
+            results = new ArrayList<>(pendingResults);
+            pendingResults.clear();
+            renderScheduled = false;
+        }
+        // Results arriving after the screen is gone have nowhere to go
+        if (isDestroyed()) {
+            return;
+        }
+        // Shows progress bar while anything is still being processed
+        UtterancePipeline currentPipeline = pipeline;
+        boolean busy = currentPipeline != null && currentPipeline.getInFlightCount() > 0;
+        progressBar.setVisibility(busy ? View.VISIBLE : View.GONE);
+        if (results.isEmpty()) {
+            return;
+        }
+        playSound(); // Plays a sound to indicate transcription completion
+        // Only the latest result is visible after this frame, so only it is laid out
+        Utterance latest = results.get(results.size() - 1);
+        if (latest.getMessage() != null) {
+            resultTextView.setText(latest.getMessage());
+        } else {
+            resultTextView.setText(formatResults(latest));
+        }
+        // Each language is spoken in turn, in the order the targets were chosen
+        for (Utterance utterance : results) {
+            for (Utterance.Target target : utterance.getTargets()) {
+                if (target.getSpeech() != null) {
+                    speechPlayer.enqueue(target.getSpeech());
+                }
+            }
         }
-        // Creates new instance of VoiceRecorder, passing voice listener
-        thisVoiceRecorder = new VoiceRecorder(thisVoiceListener);
-        thisVoiceRecorder.start(); // Starts audio recording
     }
 
-    // Stops voice recording process
-    private void stopVoiceRecorder() {
-        // Stops voice recorder if it's running
-        if (thisVoiceRecorder != null) {
-            thisVoiceRecorder.stop();
-            thisVoiceRecorder = null;
+    // Transcript followed by each translation, labelled by language when there is more than one
+    // A detected source language is shown before the transcript
+    private String formatResults(Utterance utterance) {
+        StringBuilder text = new StringBuilder();
+        if (utterance.isLanguageDetected()) {
+            text.append("(").append(utterance.getLanguageFrom()).append(") ");
         }
+        text.append(utterance.getTranscript().trim());
+        boolean labelled = utterance.getTargets().size() > 1;
+        for (Utterance.Target target : utterance.getTargets()) {
+            text.append("\n\n");
+            if (labelled) {
+                text.append(target.getLanguage()).append(": ");
+            }
+            text.append(target.getTranslation().isEmpty() ? "(not translated)" : target.getTranslation());
+        }
+        return text.toString();
+    }
 
-        // Waits for transcription thread to finish if it's running
-        if (recordingThread != null) {
+    // Starts voice recording process on recorderExecutor
+    // Waits there for startup to finish, since utterances go straight into the pipeline
+    @RequiresPermission(Manifest.permission.RECORD_AUDIO)
+    private void startVoiceRecorder() {
+        recorderExecutor.execute(() -> {
             try {
-                // Blocks current thread until recordingThread completes
-                // When join() is called, the calling thread enters waiting state
-                recordingThread.join();
+                servicesReady.await();
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                return;
             }
-            recordingThread = null;
-        }
-
-        startButton.setText("Start");
+            // Stops any current voice recorder if it's running
+            if (thisVoiceRecorder != null) {
+                thisVoiceRecorder.stop();
+            }
+            // Creates new instance of VoiceRecorder, passing voice listener
+            thisVoiceRecorder = new VoiceRecorder(thisVoiceListener, endpointer);
+            thisVoiceRecorder.setLowPowerStandby(LOW_POWER_STANDBY);
+            if (PREPROCESS_AUDIO) {
+                thisVoiceRecorder.setFilterChain(createFilterChain());
+            }
+            thisVoiceRecorder.start(); // Starts audio recording
+        });
     }
 
-    // Method to append two byte arrays
-    private byte[] appendByteArrays(byte[] array1, byte[] array2) {
-        // ByteArrayOutputStream handles flexible and unknown length of new byte array
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
-        try {
-            outputStream.write(array1);
-            outputStream.write(array2);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return outputStream.toByteArray(); // Converts to byte array
+    // High-pass at 80 Hz, then gain control towards an RMS of 2500 with at most 6x gain
+    // Pre-emphasis is left out, since Speech-to-Text expects unshaped audio and it lowers the level voice detection sees
+    private static AudioFilterChain createFilterChain() {
+        return new AudioFilterChain(
+                new HighPassFilter(80),
+                new AutomaticGainControl(2500, 200, 6, 20, 800));
     }
 
-    private void clearByteArray(byte[] array) {
-        Arrays.fill(array, (byte) 0);
+    // Stops voice recording process on recorderExecutor
+    private void stopVoiceRecorder() {
+        recorderExecutor.execute(() -> {
+            // Stops voice recorder if it's running
+            if (thisVoiceRecorder != null) {
+                thisVoiceRecorder.stop();
+                thisVoiceRecorder = null;
+            }
+        });
+
+        startButton.setText("Start");
     }
 
     // Called after user responds to permission request
@@ -457,55 +907,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     // Plays a sound to indicate completion of transcription
+    // Uses the preloaded SoundPool, so the sound never interrupts translated speech in speechPlayer
     private void playSound() {
-        // Creates a MediaPlayer instance from audio resource
-        mediaPlayer = MediaPlayer.create(this, R.raw.audio);
-        mediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-            public void onCompletion(MediaPlayer mp) {
-                // Releases MediaPlayer resources when playback is complete
-                if (mediaPlayer != null){
-                    mediaPlayer.release();
-                }
-
-            }
-        });
-        // Plays sound
-        mediaPlayer.start();
-    }
-
-    private void playAudio(ByteString audioContents) {
-        try {
-            // Creates temp file in app's cache directory
-            File tempAudio = new File(getCacheDir(), "temp_audio.mp3");
-            FileOutputStream output = new FileOutputStream(tempAudio);
-            output.write(audioContents.toByteArray());
-            output.close();
-
-            // Starts MediaPlayer
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setDataSource(tempAudio.getAbsolutePath());
-            mediaPlayer.prepare();
-            mediaPlayer.start();
-
-            mediaPlayer.setOnCompletionListener(mp -> {
-                // cleans up resources when playback is complete
-                mp.release();
-                mediaPlayer = null;
-                tempAudio.delete();
-            });
-
-            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                Log.e("AudioPlayer", "Error playing audio");
-                mp.release();
-                mediaPlayer = null;
-                tempAudio.delete();
-                return true;
-            });
-        } catch (IOException e) {
-            Log.e("AudioPlayer", "Error saving or playing audio " + e.getMessage());
+        if (completionSoundLoaded) {
+            soundPool.play(completionSoundId, 1, 1, 1, 0, 1);
         }
-
-
     }
-
 }
@@ -0,0 +1,31 @@
+package com.example.speechtranslator;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Translates on the device with ML Kit, through the model manager's warmed-up translators
+// ML Kit takes one string per call, so the segments are translated concurrently and awaited together
+public class MlKitTranslationBackend implements TranslationBackend {
+    private final TranslationModelManager modelManager;
+
+    public MlKitTranslationBackend(TranslationModelManager modelManager) {
+        this.modelManager = modelManager;
+    }
+
+    public List<String> translate(String fromCode, String toCode, List<String> segments) throws Exception {
+        List<Task<String>> tasks = new ArrayList<>();
+        for (String segment : segments) {
+            tasks.add(modelManager.translate(fromCode, toCode, segment));
+        }
+        Tasks.await(Tasks.whenAll(tasks));
+
+        List<String> translations = new ArrayList<>();
+        for (Task<String> task : tasks) {
+            translations.add(task.getResult());
+        }
+        return translations;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.speechtranslator;
+
+// How far one language pair's models are from being able to translate, as seen by TranslationModelManager
+// Every attempt to prepare the pair takes a new generation, and updates from older attempts are ignored,
+// so a late failure of an attempt that was replaced cannot overwrite the result of the one replacing it
+public class ModelPreparation {
+    public enum Readiness {
+        NOT_STARTED,
+        DOWNLOADING,
+        WARMING_UP,
+        READY,
+        FAILED
+    }
+
+    private Readiness readiness = Readiness.NOT_STARTED;
+    private boolean requireWifi;
+    private int generation;
+
+    // Whether a request can wait on the current attempt instead of starting another
+    // An attempt waiting for Wi-Fi is not good enough for a request that may use any network
+    public synchronized boolean canReuse(boolean requireWifi) {
+        if (readiness == Readiness.READY) {
+            return true;
+        }
+        if (readiness == Readiness.NOT_STARTED || readiness == Readiness.FAILED) {
+            return false;
+        }
+        return requireWifi || !this.requireWifi;
+    }
+
+    // Starts a new attempt, returning its generation
+    public synchronized int start(boolean requireWifi) {
+        this.requireWifi = requireWifi;
+        readiness = Readiness.DOWNLOADING;
+        return ++generation;
+    }
+
+    // Moves the attempt of the given generation on, returning false if a newer attempt has replaced it
+    public synchronized boolean update(int generation, Readiness readiness) {
+        if (generation != this.generation) {
+            return false;
+        }
+        this.readiness = readiness;
+        return true;
+    }
+
+    public synchronized Readiness getReadiness() {
+        return readiness;
+    }
+}
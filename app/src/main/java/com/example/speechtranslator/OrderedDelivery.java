@@ -0,0 +1,39 @@
+package com.example.speechtranslator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Hands results to a consumer in sequence order, even when they complete out of order
+// A result is held back until every result with a lower sequence number has been delivered
+public class OrderedDelivery<T> {
+    public interface Consumer<T> {
+        void deliver(long sequence, T result);
+    }
+
+    private final Consumer<T> consumer;
+    // Completed results waiting for an earlier one, guarded by this
+    private final Map<Long, T> waiting = new HashMap<>();
+    private long nextSequence;
+
+    public OrderedDelivery(long firstSequence, Consumer<T> consumer) {
+        this.nextSequence = firstSequence;
+        this.consumer = consumer;
+    }
+
+    // Marks a sequence number as finished and delivers everything that is now in order
+    public synchronized void complete(long sequence, T result) {
+        if (sequence < nextSequence || waiting.containsKey(sequence)) {
+            throw new IllegalStateException("Sequence " + sequence + " already completed");
+        }
+        waiting.put(sequence, result);
+        while (waiting.containsKey(nextSequence)) {
+            consumer.deliver(nextSequence, waiting.remove(nextSequence));
+            nextSequence++;
+        }
+    }
+
+    // Number of completed results held back behind an unfinished one
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.speechtranslator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Scoring of how much each language pair has been used, for predicting which ones to prefetch
+// Each use adds one to a pair's score, and scores halve every HALF_LIFE_MILLIS so recent pairs are preferred
+public class PairUsage {
+    static final long HALF_LIFE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private PairUsage() {}
+
+    // A score that was last updated ageMillis ago, as it stands now
+    public static float decay(float score, long ageMillis) {
+        return (float) (score * Math.pow(0.5, (double) Math.max(0, ageMillis) / HALF_LIFE_MILLIS));
+    }
+
+    // Up to limit pairs with the highest scores, most used first
+    public static List<String> mostUsed(Map<String, Float> scores, int limit) {
+        List<String> keys = new ArrayList<>(scores.keySet());
+        Collections.sort(keys, (a, b) -> Float.compare(scores.get(b), scores.get(a)));
+        return keys.subList(0, Math.min(limit, keys.size()));
+    }
+}
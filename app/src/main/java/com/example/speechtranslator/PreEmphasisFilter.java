@@ -0,0 +1,31 @@
+package com.example.speechtranslator;
+
+// Boosts high frequencies relative to low ones, y[n] = x[n] - k * x[n-1]
+// Brings out consonants that are quiet next to voiced sounds, but lowers the overall level of speech,
+// so it belongs before gain control in a chain
+public class PreEmphasisFilter implements AudioFilter {
+    // Usual pre-emphasis coefficient for speech
+    public static final float DEFAULT_COEFFICIENT = 0.97f;
+
+    private final float coefficient;
+    private float previousInput;
+
+    public PreEmphasisFilter(float coefficient) {
+        this.coefficient = coefficient;
+    }
+
+    public void reset(int sampleRate) {
+        previousInput = 0;
+    }
+
+    public void process(short[] samples, int count) {
+        float k = coefficient;
+        float x1 = previousInput;
+        for (int i = 0; i < count; i++) {
+            float x = samples[i];
+            samples[i] = AudioFilter.clip(x - k * x1);
+            x1 = x;
+        }
+        previousInput = x1;
+    }
+}
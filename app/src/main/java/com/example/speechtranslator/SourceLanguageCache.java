@@ -0,0 +1,58 @@
+package com.example.speechtranslator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Candidate source languages for auto-detect, kept for the session
+// Speech-to-Text takes one primary language and at most three alternatives in a request,
+// so the languages most recently detected or picked go first, then the preferred one, then the targets,
+// then the rest
+// The primary language is what Speech-to-Text assumes when it cannot tell, so it is never a target
+// language while there is any other candidate; a target as the source would skip translation
+public class SourceLanguageCache {
+    // Primary language plus the three alternatives Speech-to-Text allows
+    public static final int MAX_CANDIDATES = 4;
+
+    private final List<String> fallback;
+    // Tried first when nothing has been detected or picked yet, such as the device's language, or null
+    private final String preferred;
+    // Guarded by this, most recent first
+    private final List<String> recent = new ArrayList<>();
+
+    // fallback lists every language that can be detected, in the order to try them without history
+    public SourceLanguageCache(List<String> fallback, String preferred) {
+        this.fallback = new ArrayList<>(fallback);
+        this.preferred = fallback.contains(preferred) ? preferred : null;
+    }
+
+    // Languages to send with a request, the most likely first
+    // targets are the languages being translated into, which the speaker may also be using
+    public synchronized List<String> getCandidates(List<String> targets) {
+        Set<String> ordered = new LinkedHashSet<>(recent);
+        if (preferred != null) {
+            ordered.add(preferred);
+        }
+        for (String language : targets) {
+            if (fallback.contains(language)) {
+                ordered.add(language);
+            }
+        }
+        ordered.addAll(fallback);
+        List<String> candidates = new ArrayList<>(ordered);
+        for (int i = 0; i < candidates.size(); i++) {
+            if (!targets.contains(candidates.get(i))) {
+                candidates.add(0, candidates.remove(i));
+                break;
+            }
+        }
+        return candidates.subList(0, Math.min(MAX_CANDIDATES, candidates.size()));
+    }
+
+    // Moves a language that was just detected or picked to the front
+    public synchronized void remember(String language) {
+        recent.remove(language);
+        recent.add(0, language);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.speechtranslator;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.util.Log;
+
+import com.google.protobuf.ByteString;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Plays synthesized speech straight from memory through one long-lived AudioTrack
+// Utterances are queued and played back to back on a playback thread, in the order they were queued
+// Audio is written in small chunks, so playback starts as soon as the first chunk is in the track
+public class SpeechPlayer {
+    private static final String TAG = "SpeechPlayer";
+    // Size of each write, about 40 ms at 24 kHz
+    private static final int CHUNK_BYTES = 2048;
+    // Track buffer, long enough to ride out scheduling hiccups on the playback thread
+    private static final int BUFFER_MILLIS = 200;
+
+    private final AudioTrack track;
+    private final BlockingQueue<ByteString> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    // Reused for every write, so playback does not allocate
+    private final byte[] chunk = new byte[CHUNK_BYTES];
+
+    // sampleRate must match the 16-bit mono PCM that will be queued
+    public SpeechPlayer(int sampleRate) {
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        track = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                        .build())
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setBufferSizeInBytes(Math.max(minBuffer, sampleRate * 2 * BUFFER_MILLIS / 1000))
+                .build();
+        thread = new Thread(this::playQueued, "SpeechPlayer");
+        thread.start();
+    }
+
+    // Adds speech to the end of the queue, from any thread
+    public void enqueue(ByteString pcm) {
+        queue.add(pcm);
+    }
+
+    // Stops playback and releases the track once the playback thread has finished
+    public void shutdown() {
+        queue.clear();
+        thread.interrupt();
+    }
+
+    private void playQueued() {
+        try {
+            while (true) {
+                ByteString pcm = queue.take();
+                if (track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                    track.play();
+                }
+                Tracer.instant(Tracer.PLAYBACK, pcm.size());
+                write(pcm);
+                // Lets the buffered audio finish, then stops the track until there is more to say
+                if (queue.isEmpty()) {
+                    track.stop();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Shutting down
+        } finally {
+            track.pause();
+            track.flush();
+            track.release();
+        }
+    }
+
+    private void write(ByteString pcm) throws InterruptedException {
+        int size = pcm.size() & ~1;
+        for (int offset = 0; offset < size; ) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            int count = Math.min(CHUNK_BYTES, size - offset);
+            pcm.copyTo(chunk, offset, 0, count);
+            int written = track.write(chunk, 0, count);
+            if (written < 0) {
+                Log.e(TAG, "AudioTrack write failed: " + written);
+                return;
+            }
+            offset += written;
+        }
+    }
+}
@@ -16,7 +16,6 @@
 
 package com.example.speechtranslator;
 import android.content.Context;
-import android.util.Log;
 
 import com.google.api.gax.core.FixedCredentialsProvider;
 import com.google.auth.oauth2.GoogleCredentials;
@@ -30,20 +29,20 @@ import com.google.cloud.texttospeech.v1.TextToSpeechSettings;
 import com.google.cloud.texttospeech.v1.VoiceSelectionParams;
 import com.google.protobuf.ByteString;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+
+// Synthesizes speech as raw 16-bit mono PCM that SpeechPlayer can play straight from memory
+// One client is created up front and shared by all requests, so synthesis never reads credentials or files
 public class TextToSpeech {
-    public TextToSpeech(){
+    // Sample rate requested for every voice
+    public static final int SAMPLE_RATE = 24000;
 
-    }
-    public ByteString synthesizeText(String text, Context context, String targetLanguage) throws Exception {
-        TextToSpeechClient textToSpeechClient = null;
-        try {
-            // Getting credentials from Google API
-            InputStream credentialsStream = context.getResources().openRawResource(R.raw.credentials);
+    private final TextToSpeechClient textToSpeechClient;
+
+    public TextToSpeech(Context context) throws IOException {
+        // Getting credentials from Google API
+        try (InputStream credentialsStream = context.getResources().openRawResource(R.raw.credentials)) {
             GoogleCredentials credentials = GoogleCredentials.fromStream(credentialsStream);
             FixedCredentialsProvider credentialsProvider = FixedCredentialsProvider.create(credentials);
 
@@ -52,37 +51,58 @@ public class TextToSpeech {
                     .build();
 
             textToSpeechClient = TextToSpeechClient.create(settings);
+        }
+    }
 
-            // Sets text input to be synthesized
-            SynthesisInput input = SynthesisInput.newBuilder().setText(text).build();
+    // Returns the speech for text as PCM at SAMPLE_RATE, without the WAV header
+    public ByteString synthesizeText(String text, String targetLanguage) {
+        // Sets text input to be synthesized
+        SynthesisInput input = SynthesisInput.newBuilder().setText(text).build();
 
-            VoiceSelectionParams voice = VoiceSelectionParams.newBuilder()
-                    .setLanguageCode(targetLanguage)
-                    .setSsmlGender(SsmlVoiceGender.FEMALE)
-                    .build();
+        VoiceSelectionParams voice = VoiceSelectionParams.newBuilder()
+                .setLanguageCode(targetLanguage)
+                .setSsmlGender(SsmlVoiceGender.FEMALE)
+                .build();
 
-            // Selects type of audio file to return
-            AudioConfig audioConfig = AudioConfig.newBuilder()
-                    .setAudioEncoding(AudioEncoding.MP3)
-                    .build();
+        // Selects uncompressed audio so it can be written to an AudioTrack without decoding
+        AudioConfig audioConfig = AudioConfig.newBuilder()
+                .setAudioEncoding(AudioEncoding.LINEAR16)
+                .setSampleRateHertz(SAMPLE_RATE)
+                .build();
 
-            // Performs text-to-speech request
-            SynthesizeSpeechResponse response = textToSpeechClient.synthesizeSpeech(input, voice, audioConfig);
+        // Performs text-to-speech request
+        SynthesizeSpeechResponse response = textToSpeechClient.synthesizeSpeech(input, voice, audioConfig);
 
-            // Gets audio contents from response
-            ByteString audioContents = response.getAudioContent();
+        // Gets audio contents from response
+        return stripWavHeader(response.getAudioContent());
+    }
+
+    public void close() {
+        textToSpeechClient.close();
+    }
 
-            // Writes response to output file
-            File tempAudioFile = new File(context.getCacheDir(), "output.mp3");
-            try (OutputStream out = new FileOutputStream(tempAudioFile)) {
-                out.write(audioContents.toByteArray());
-                Log.d("TTS", "Audio saved to: " + tempAudioFile.getAbsolutePath());
-                return audioContents;
+    // LINEAR16 responses come as a WAV file; returns a view of just its samples
+    static ByteString stripWavHeader(ByteString wav) {
+        if (wav.size() < 12 || !wav.substring(0, 4).toStringUtf8().equals("RIFF")) {
+            return wav;
+        }
+        int offset = 12;
+        while (offset + 8 <= wav.size()) {
+            String id = wav.substring(offset, offset + 4).toStringUtf8();
+            int size = (wav.byteAt(offset + 4) & 0xFF) | (wav.byteAt(offset + 5) & 0xFF) << 8
+                    | (wav.byteAt(offset + 6) & 0xFF) << 16 | (wav.byteAt(offset + 7) & 0xFF) << 24;
+            offset += 8;
+            if (id.equals("data")) {
+                // Streamed responses can leave the size unset, so the data runs to the end
+                int end = size <= 0 || offset + size > wav.size() ? wav.size() : offset + size;
+                return wav.substring(offset, end);
+            }
+            // A chunk claiming to run past the end leaves nothing after it to find
+            if (size < 0 || size > wav.size() - offset) {
+                break;
             }
-        } catch (IOException e) {
-            Log.e("TTS", "failed " + e.getMessage());
+            offset += size + (size & 1);
         }
-
-        return null;
+        return wav;
     }
 }
@@ -0,0 +1,187 @@
+package com.example.speechtranslator;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Low-overhead event tracing for the capture thread and the transcription pipeline
+// Events go into a fixed-size ring of preallocated records, so recording never allocates or locks
+// When disabled every call returns after a single volatile read
+public final class Tracer {
+    // Event ids, each with a name in EVENT_NAMES
+    public static final int AUDIO_RECORD_INIT = 0;
+    public static final int CAPTURE_READ = 1;
+    public static final int VOICE_START = 2;
+    public static final int VOICE_END = 3;
+    public static final int RECOGNIZE = 4;
+    public static final int TRANSLATE = 5;
+    public static final int SYNTHESIZE = 6;
+    public static final int PLAYBACK = 7;
+    private static final String[] EVENT_NAMES = {
+            "AudioRecordInit", "CaptureRead", "VoiceStart", "VoiceEnd",
+            "Recognize", "Translate", "Synthesize", "Playback"
+    };
+
+    // What begin() and beginAsync() opened, returned to the caller and passed back to the matching end
+    // Ending only what was opened keeps sections balanced when tracing is switched on or off in between
+    private static final int SECTION_RECORDED = 1;
+    private static final int SECTION_SYSTEM = 2;
+
+    // Phase of an event record
+    private static final int INSTANT = 0;
+    private static final int BEGIN = 1;
+    private static final int END = 2;
+
+    // Number of records kept; must be a power of two so slots can be found with a mask
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    private static final int FILE_MAGIC = 0x53545243;
+    private static final int FILE_VERSION = 1;
+
+    // Record fields, stored column by column so nothing is allocated per event
+    private static final long[] timestamps = new long[CAPACITY];
+    private static final int[] events = new int[CAPACITY];
+    private static final long[] args = new long[CAPACITY];
+    // Slot number each record was last written for, published after the fields
+    // Lets a dump skip records that were being overwritten while it read them
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong nextSlot = new AtomicLong();
+
+    private static volatile boolean enabled;
+    // Also forwards sections to android.os.Trace so they show up in system traces
+    private static volatile boolean systemTraceEnabled;
+
+    private Tracer() {
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setSystemTraceEnabled(boolean enable) {
+        systemTraceEnabled = enable;
+    }
+
+    // Records a point-in-time event with an event-specific argument, such as a byte count
+    public static void instant(int event, long arg) {
+        if (enabled) {
+            record(event, INSTANT, arg);
+        }
+    }
+
+    // Starts a section that ends on the same thread, returning what has to be passed to end()
+    public static int begin(int event, long arg) {
+        if (!enabled) {
+            return 0;
+        }
+        record(event, BEGIN, arg);
+        if (systemTraceEnabled) {
+            Trace.beginSection(EVENT_NAMES[event]);
+            return SECTION_RECORDED | SECTION_SYSTEM;
+        }
+        return SECTION_RECORDED;
+    }
+
+    // Ends what the matching begin() opened, whether or not tracing is still on
+    public static void end(int event, long arg, int section) {
+        if ((section & SECTION_SYSTEM) != 0) {
+            Trace.endSection();
+        }
+        if ((section & SECTION_RECORDED) != 0) {
+            record(event, END, arg);
+        }
+    }
+
+    // Starts a section that may end on another thread, matched up by cookie
+    public static int beginAsync(int event, int cookie) {
+        if (!enabled) {
+            return 0;
+        }
+        record(event, BEGIN, cookie);
+        if (systemTraceEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(EVENT_NAMES[event], cookie);
+            return SECTION_RECORDED | SECTION_SYSTEM;
+        }
+        return SECTION_RECORDED;
+    }
+
+    public static void endAsync(int event, int cookie, int section) {
+        if ((section & SECTION_SYSTEM) != 0) {
+            Trace.endAsyncSection(EVENT_NAMES[event], cookie);
+        }
+        if ((section & SECTION_RECORDED) != 0) {
+            record(event, END, cookie);
+        }
+    }
+
+    private static void record(int event, int phase, long arg) {
+        long slot = nextSlot.getAndIncrement();
+        int index = (int) (slot & MASK);
+        // Marks the slot as being rewritten before touching its fields
+        published.set(index, 0);
+        timestamps[index] = System.nanoTime();
+        events[index] = event << 2 | phase;
+        args[index] = arg;
+        published.lazySet(index, slot + 1);
+    }
+
+    // Writes the records currently in the ring to a file, oldest first
+    // Timestamps are stored as variable-length deltas, so a full ring dumps to around 100 KB
+    public static void dump(File file) throws IOException {
+        long end = nextSlot.get();
+        long start = Math.max(0, end - CAPACITY);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeByte(EVENT_NAMES.length);
+            for (String name : EVENT_NAMES) {
+                out.writeUTF(name);
+            }
+            long previousTime = 0;
+            boolean first = true;
+            for (long slot = start; slot < end; slot++) {
+                int index = (int) (slot & MASK);
+                long before = published.get(index);
+                long time = timestamps[index];
+                int event = events[index];
+                long arg = args[index];
+                // Skips records overwritten or still being written since the dump started
+                if (before != slot + 1 || published.get(index) != before) {
+                    continue;
+                }
+                if (first) {
+                    out.writeLong(time);
+                    first = false;
+                } else {
+                    writeVarLong(out, zigZag(time - previousTime));
+                }
+                previousTime = time;
+                out.writeByte(event);
+                writeVarLong(out, zigZag(arg));
+            }
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -19,21 +19,15 @@ package com.example.speechtranslator;
 import android.content.Context;
 import android.util.Log;
 
+import com.google.android.gms.tasks.Task;
 import com.google.mlkit.common.model.DownloadConditions;
-import com.google.mlkit.nl.translate.TranslateLanguage;
 import com.google.mlkit.nl.translate.Translator;
 import com.google.mlkit.nl.translate.TranslatorOptions;
 public class Translation {
     private final Translator translator;
 
-    // Needs this interface because translation happens in background
-    // Needs to be notified when translation is successful or not
-    public interface TranslationCallback {
-        void onSuccess(String translatedText);
-        void onError(Exception e);
-    }
-
     // Passes the Context from MainActivity
+    // Model downloads are started separately through downloadModel so callers can wait on them
     public Translation(Context context, String fromCode, String toCode) {
 
         TranslatorOptions options = new TranslatorOptions.Builder()
@@ -43,23 +37,24 @@ public class Translation {
 
 
         translator = com.google.mlkit.nl.translate.Translation.getClient(options);
+    }
 
-        DownloadConditions conditions = new DownloadConditions.Builder()
-                .requireWifi()
-                .build();
+    // Downloads the models for this language pair if they are not on the device yet
+    // The returned task completes once both models are available
+    public Task<Void> downloadModel(boolean requireWifi) {
+        DownloadConditions.Builder conditions = new DownloadConditions.Builder();
+        if (requireWifi) {
+            conditions.requireWifi();
+        }
 
-        translator.downloadModelIfNeeded(conditions)
+        return translator.downloadModelIfNeeded(conditions.build())
                 .addOnSuccessListener(unused -> Log.d("Translator", "Model downloaded successfully"))
                 .addOnFailureListener(e -> Log.e("Translator", "Model failed to download: " + e.getMessage()));
     }
 
-    // Object callback is passed from MainActivity
-    // Representing this instance of translation
-    // If it's successful, then triggers onSuccess of the callback's and vice versa
-    public void translateText(String transcript, TranslationCallback callback){
-        translator.translate(transcript)
-                .addOnSuccessListener(callback::onSuccess)
-                .addOnFailureListener(callback::onError);
+    // Translates text, for callers that chain on the result
+    public Task<String> translate(String text) {
+        return translator.translate(text);
     }
 
     public void close() {
@@ -0,0 +1,10 @@
+package com.example.speechtranslator;
+
+import java.util.List;
+
+// Translates text between two languages, taking many segments per call so callers can batch them
+// Implementations block until the whole batch is done, so they must be called off the UI thread
+public interface TranslationBackend {
+    // Returns one translation per segment, in the same order as the segments
+    List<String> translate(String fromCode, String toCode, List<String> segments) throws Exception;
+}
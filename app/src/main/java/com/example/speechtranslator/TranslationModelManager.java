@@ -0,0 +1,179 @@
+package com.example.speechtranslator;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.common.model.RemoteModelManager;
+import com.google.mlkit.nl.translate.TranslateRemoteModel;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps ML Kit translators downloaded and initialized ahead of the first translation
+// Pairs are predicted from the spinner selection and from how often each pair was used before
+public class TranslationModelManager {
+    private static final String TAG = "TranslationModels";
+    private static final String PREFERENCES = "translation_model_usage";
+    private static final String SCORE_PREFIX = "score:";
+    private static final String TIME_PREFIX = "time:";
+    // Translated once per pair so the native translator is initialized before real use
+    private static final String WARM_UP_TEXT = "Hello";
+    // Number of pairs from usage history that are prefetched at startup
+    private static final int MAX_PREDICTED_PAIRS = 3;
+
+    // Translator for one pair along with the task that completes once it is ready
+    private static class ModelPair {
+        final Translation translation;
+        final ModelPreparation preparation = new ModelPreparation();
+        // Guarded by the manager
+        Task<Void> ready;
+
+        ModelPair(Translation translation) {
+            this.translation = translation;
+        }
+    }
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    // Guarded by this
+    private final Map<String, ModelPair> pairs = new HashMap<>();
+    private boolean closed;
+
+    public TranslationModelManager(Context context) {
+        this.context = context.getApplicationContext();
+        preferences = this.context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    // Prepares the selected pair, then prefetches the most used pairs while on Wi-Fi
+    public void warmUp(String fromCode, String toCode) {
+        if (!fromCode.equals(toCode)) {
+            prepare(fromCode, toCode, false);
+        }
+        for (String key : predictPairs(MAX_PREDICTED_PAIRS)) {
+            String[] codes = key.split(">");
+            prepare(codes[0], codes[1], true);
+        }
+    }
+
+    // Downloads, verifies and warms up the models for a pair, returning a task that completes once it is ready
+    // A pair already being prepared is reused; one waiting for Wi-Fi is retried on any network if requireWifi is false
+    public synchronized Task<Void> prepare(String fromCode, String toCode, boolean requireWifi) {
+        if (closed) {
+            return Tasks.forException(new IllegalStateException("Translation models have been closed"));
+        }
+        String key = pairKey(fromCode, toCode);
+        ModelPair pair = pairs.get(key);
+        if (pair == null) {
+            pair = new ModelPair(new Translation(context, fromCode, toCode));
+            pairs.put(key, pair);
+        } else if (pair.preparation.canReuse(requireWifi)) {
+            return pair.ready;
+        }
+
+        // The attempt this replaces may still finish, but its outcome no longer counts
+        ModelPair preparing = pair;
+        int generation = preparing.preparation.start(requireWifi);
+        long start = System.currentTimeMillis();
+        preparing.ready = preparing.translation.downloadModel(requireWifi)
+                .onSuccessTask(unused -> verifyDownloaded(fromCode, toCode))
+                .onSuccessTask(unused -> {
+                    preparing.preparation.update(generation, ModelPreparation.Readiness.WARMING_UP);
+                    return preparing.translation.translate(WARM_UP_TEXT);
+                })
+                .continueWith(task -> {
+                    if (!task.isSuccessful()) {
+                        if (preparing.preparation.update(generation, ModelPreparation.Readiness.FAILED)) {
+                            Log.w(TAG, key + " failed to prepare: " + task.getException());
+                        }
+                        throw task.getException();
+                    }
+                    if (preparing.preparation.update(generation, ModelPreparation.Readiness.READY)) {
+                        Log.i(TAG, key + " ready in " + (System.currentTimeMillis() - start) + " ms");
+                    }
+                    return null;
+                });
+        return preparing.ready;
+    }
+
+    // Current state of a pair, for deciding whether the first translation will have to wait
+    public synchronized ModelPreparation.Readiness getReadiness(String fromCode, String toCode) {
+        ModelPair pair = pairs.get(pairKey(fromCode, toCode));
+        return pair == null ? ModelPreparation.Readiness.NOT_STARTED : pair.preparation.getReadiness();
+    }
+
+    // Translates once the pair is ready, reusing the warmed-up translator
+    public Task<String> translate(String fromCode, String toCode, String text) {
+        recordUse(fromCode, toCode);
+        Task<Void> ready;
+        Translation translation;
+        // Looks up the task and the translator together, so close() cannot remove the pair in between
+        synchronized (this) {
+            if (closed) {
+                return Tasks.forException(new IllegalStateException("Translation models have been closed"));
+            }
+            ready = prepare(fromCode, toCode, false);
+            translation = pairs.get(pairKey(fromCode, toCode)).translation;
+        }
+        // Tries the translation even if preparation failed so the caller gets ML Kit's own error
+        return ready.continueWithTask(task -> translation.translate(text));
+    }
+
+    // Releases all translators; later requests fail instead of creating new ones
+    public synchronized void close() {
+        closed = true;
+        for (ModelPair pair : pairs.values()) {
+            pair.translation.close();
+        }
+        pairs.clear();
+    }
+
+    // Checks that the models for both languages really are on the device after downloading
+    private Task<Void> verifyDownloaded(String fromCode, String toCode) {
+        RemoteModelManager modelManager = RemoteModelManager.getInstance();
+        Task<Boolean> from = modelManager.isModelDownloaded(new TranslateRemoteModel.Builder(fromCode).build());
+        Task<Boolean> to = modelManager.isModelDownloaded(new TranslateRemoteModel.Builder(toCode).build());
+        return Tasks.whenAll(from, to).onSuccessTask(unused -> {
+            if (from.getResult() && to.getResult()) {
+                return Tasks.<Void>forResult(null);
+            }
+            return Tasks.<Void>forException(new IllegalStateException("Model missing for " + pairKey(fromCode, toCode)));
+        });
+    }
+
+    // Adds one use to a pair, decaying its earlier uses by how long ago they were
+    private void recordUse(String fromCode, String toCode) {
+        String key = pairKey(fromCode, toCode);
+        long now = System.currentTimeMillis();
+        float score = decayedScore(key, now) + 1;
+        preferences.edit()
+                .putFloat(SCORE_PREFIX + key, score)
+                .putLong(TIME_PREFIX + key, now)
+                .apply();
+    }
+
+    // Pairs with the highest decayed usage score, most likely first
+    private List<String> predictPairs(int limit) {
+        long now = System.currentTimeMillis();
+        Map<String, Float> scores = new HashMap<>();
+        for (String name : preferences.getAll().keySet()) {
+            if (name.startsWith(SCORE_PREFIX)) {
+                String key = name.substring(SCORE_PREFIX.length());
+                scores.put(key, decayedScore(key, now));
+            }
+        }
+        return PairUsage.mostUsed(scores, limit);
+    }
+
+    private float decayedScore(String key, long now) {
+        float score = preferences.getFloat(SCORE_PREFIX + key, 0);
+        return PairUsage.decay(score, now - preferences.getLong(TIME_PREFIX + key, now));
+    }
+
+    private static String pairKey(String fromCode, String toCode) {
+        return fromCode + ">" + toCode;
+    }
+}
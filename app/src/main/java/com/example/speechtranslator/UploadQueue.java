@@ -0,0 +1,493 @@
+package com.example.speechtranslator;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Disk-backed queue of utterances that could not be transcribed when they were captured
+// Each utterance is kept in its own file so the queue survives the app being killed while offline
+// Entries are uploaded in batches once connectivity returns, in capture order within each session
+public class UploadQueue {
+    private static final String TAG = "UploadQueue";
+    // Identifies queue files and their layout version
+    private static final int FILE_MAGIC = 0x53545551;
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_SUFFIX = ".utt";
+    // Number of failed attempts after which an entry is dropped instead of blocking its session
+    private static final int MAX_ATTEMPTS = 8;
+
+    // Uploads a single queued utterance, throwing if the backend could not be reached
+    public interface Uploader {
+        void upload(Entry entry) throws Exception;
+
+        // Whether a failed upload can succeed later, as when the network was down
+        // Other failures, such as a request the backend rejects, would fail the same way every time,
+        // so the entry is dropped instead of retried
+        default boolean isRetryable(Exception e) {
+            return e instanceof IOException;
+        }
+    }
+
+    // One queued utterance, with the audio kept on disk until it is needed
+    public static class Entry {
+        private final File file;
+        private final String sessionId;
+        private final long sequence;
+        private final long createdMillis;
+        private final int sampleRate;
+        private final String languageFrom;
+        private final String languageTo;
+        private final int audioLength;
+        private int attempts;
+
+        private Entry(File file, String sessionId, long sequence, long createdMillis, int sampleRate,
+                      String languageFrom, String languageTo, int audioLength) {
+            this.file = file;
+            this.sessionId = sessionId;
+            this.sequence = sequence;
+            this.createdMillis = createdMillis;
+            this.sampleRate = sampleRate;
+            this.languageFrom = languageFrom;
+            this.languageTo = languageTo;
+            this.audioLength = audioLength;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public String getLanguageFrom() {
+            return languageFrom;
+        }
+
+        public String getLanguageTo() {
+            return languageTo;
+        }
+
+        // Reads the recorded LINEAR16 audio back from disk
+        public byte[] readAudio() throws IOException {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                readHeader(in, file);
+                byte[] compressed = new byte[in.readInt()];
+                in.readFully(compressed);
+                return decompress(compressed, audioLength);
+            }
+        }
+    }
+
+    private final File directory;
+    private final Uploader uploader;
+    private final int batchSize;
+    // Pending entries grouped by session, each list kept in sequence order
+    private final Map<String, List<Entry>> pending = new LinkedHashMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Coordinates drain rounds and backoff timers
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Performs the uploads themselves, bounding how many run at once
+    private final ExecutorService uploadExecutor;
+    private long initialBackoffMillis = 1000;
+    private long maxBackoffMillis = 5 * 60 * 1000;
+    // Guarded by this; bumping the token retires any drain chain that is already scheduled
+    private long drainToken;
+    // Guarded by this; whether a drain chain is running, which stops by itself once the queue is empty
+    private boolean draining;
+    private int failedRounds;
+    // Drain statistics
+    private final AtomicLong uploadedCount = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private volatile double lastDrainRate;
+
+    public UploadQueue(File directory, Uploader uploader, int maxConcurrentUploads, int batchSize) {
+        this.directory = directory;
+        this.uploader = uploader;
+        this.batchSize = batchSize;
+        this.uploadExecutor = Executors.newFixedThreadPool(maxConcurrentUploads);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create queue directory " + directory);
+        }
+        loadPending();
+    }
+
+    // Overrides the retry delays, mainly so tests do not have to wait for real backoff
+    void setBackoff(long initialMillis, long maxMillis) {
+        initialBackoffMillis = initialMillis;
+        maxBackoffMillis = maxMillis;
+    }
+
+    // Writes an utterance to disk and adds it to the back of its session
+    // Starts draining again if the queue had gone idle, keeping any backoff of a chain that is still running
+    public Entry enqueue(String sessionId, int sampleRate, String languageFrom, String languageTo, byte[] audio) throws IOException {
+        long sequence = nextSequence.getAndIncrement();
+        long created = System.currentTimeMillis();
+        String name = created + "-" + sequence + FILE_SUFFIX;
+        File tempFile = new File(directory, name + ".tmp");
+        File file = new File(directory, name);
+        byte[] compressed = compress(audio);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(sessionId);
+            out.writeLong(sequence);
+            out.writeLong(created);
+            out.writeInt(sampleRate);
+            out.writeUTF(languageFrom);
+            out.writeUTF(languageTo);
+            out.writeInt(audio.length);
+            out.writeInt(compressed.length);
+            out.write(compressed);
+        }
+        // Renames only once fully written so a crash never leaves a half-written entry behind
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not commit queue entry " + file);
+        }
+        Entry entry = new Entry(file, sessionId, sequence, created, sampleRate, languageFrom, languageTo, audio.length);
+        long token = 0;
+        synchronized (this) {
+            List<Entry> entries = pending.get(sessionId);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                pending.put(sessionId, entries);
+            }
+            entries.add(entry);
+            if (!draining) {
+                draining = true;
+                token = ++drainToken;
+            }
+        }
+        Log.i(TAG, "Queued utterance " + sequence + " (" + audio.length + " bytes as " + compressed.length + "), depth " + getDepth());
+        if (token != 0) {
+            long restartToken = token;
+            scheduler.execute(() -> drainRound(restartToken));
+        }
+        return entry;
+    }
+
+    // Starts uploading queued entries, e.g. when the network becomes available
+    // Resets any pending backoff so reconnecting is acted on straight away
+    public void drain() {
+        long token;
+        synchronized (this) {
+            failedRounds = 0;
+            draining = true;
+            token = ++drainToken;
+        }
+        scheduler.execute(() -> drainRound(token));
+    }
+
+    // Number of utterances still waiting to be uploaded
+    public synchronized int getDepth() {
+        int depth = 0;
+        for (List<Entry> entries : pending.values()) {
+            depth += entries.size();
+        }
+        return depth;
+    }
+
+    // Age of the oldest waiting utterance, or 0 if the queue is empty
+    public synchronized long getOldestAgeMillis() {
+        long oldest = Long.MAX_VALUE;
+        for (List<Entry> entries : pending.values()) {
+            if (!entries.isEmpty()) {
+                oldest = Math.min(oldest, entries.get(0).createdMillis);
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    // Total number of utterances uploaded from the queue
+    public long getUploadedCount() {
+        return uploadedCount.get();
+    }
+
+    // Total bytes of raw audio uploaded from the queue
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    // Utterances drained per second during the most recent drain round
+    public double getLastDrainRate() {
+        return lastDrainRate;
+    }
+
+    // Stops background work; entries stay on disk for the next session
+    public void shutdown() {
+        scheduler.shutdownNow();
+        uploadExecutor.shutdownNow();
+    }
+
+    // Uploads one batch, then either continues, backs off, or stops once the queue is empty
+    private void drainRound(long token) {
+        Map<String, List<Entry>> batch;
+        synchronized (this) {
+            if (token != drainToken) {
+                return;
+            }
+            // Taken under the same lock as enqueue(), so an entry added now either makes this batch
+            // or sees the chain stopped and starts another
+            batch = takeBatch();
+            if (batch.isEmpty()) {
+                draining = false;
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Future<Integer>> results = new ArrayList<>();
+        for (List<Entry> sessionEntries : batch.values()) {
+            // Each session is uploaded by a single task so its utterances stay in order
+            results.add(uploadExecutor.submit(() -> uploadInOrder(sessionEntries)));
+        }
+        int done = 0;
+        boolean failed = false;
+        for (Future<Integer> result : results) {
+            try {
+                done += result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                failed = true;
+            }
+        }
+        failed |= done < countEntries(batch);
+
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        lastDrainRate = done * 1000.0 / elapsedMillis;
+        Log.i(TAG, "Drained " + done + " in " + elapsedMillis + " ms, depth " + getDepth()
+                + ", oldest " + getOldestAgeMillis() + " ms");
+
+        long delay = 0;
+        synchronized (this) {
+            if (failed) {
+                // Exponential backoff, capped so a long outage still retries regularly
+                delay = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(failedRounds, 20));
+                failedRounds++;
+            } else {
+                failedRounds = 0;
+            }
+        }
+        if (delay > 0) {
+            Log.w(TAG, "Upload failed, retrying in " + delay + " ms");
+        }
+        scheduler.schedule(() -> drainRound(token), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Takes up to batchSize entries from the heads of the sessions, oldest session first
+    private synchronized Map<String, List<Entry>> takeBatch() {
+        Map<String, List<Entry>> batch = new LinkedHashMap<>();
+        int remaining = batchSize;
+        for (Map.Entry<String, List<Entry>> session : pending.entrySet()) {
+            if (remaining == 0) {
+                break;
+            }
+            List<Entry> entries = session.getValue();
+            int count = Math.min(remaining, entries.size());
+            if (count > 0) {
+                batch.put(session.getKey(), new ArrayList<>(entries.subList(0, count)));
+                remaining -= count;
+            }
+        }
+        return batch;
+    }
+
+    // Uploads a session's entries in sequence order, stopping at the first failure
+    // Returns how many entries left the queue, whether uploaded or dropped
+    private int uploadInOrder(List<Entry> entries) {
+        int done = 0;
+        for (Entry entry : entries) {
+            try {
+                uploader.upload(entry);
+                uploadedCount.incrementAndGet();
+                uploadedBytes.addAndGet(entry.audioLength);
+            } catch (Exception e) {
+                if (!uploader.isRetryable(e)) {
+                    Log.e(TAG, "Dropping utterance " + entry.sequence + ", upload cannot succeed: " + e);
+                } else {
+                    entry.attempts++;
+                    Log.w(TAG, "Upload of " + entry.sequence + " failed (attempt " + entry.attempts + "): " + e.getMessage());
+                    if (entry.attempts < MAX_ATTEMPTS) {
+                        return done;
+                    }
+                    Log.e(TAG, "Dropping utterance " + entry.sequence + " after " + MAX_ATTEMPTS + " attempts");
+                }
+            }
+            remove(entry);
+            done++;
+        }
+        return done;
+    }
+
+    private synchronized void remove(Entry entry) {
+        List<Entry> entries = pending.get(entry.sessionId);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                pending.remove(entry.sessionId);
+            }
+        }
+        if (!entry.file.delete()) {
+            Log.w(TAG, "Could not delete " + entry.file);
+        }
+    }
+
+    private static int countEntries(Map<String, List<Entry>> batch) {
+        int count = 0;
+        for (List<Entry> entries : batch.values()) {
+            count += entries.size();
+        }
+        return count;
+    }
+
+    // Restores entries left over from a previous run
+    private void loadPending() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                // Left behind by a write that never completed
+                file.delete();
+            } else if (name.endsWith(FILE_SUFFIX)) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                    entries.add(readHeader(in, file));
+                } catch (IOException e) {
+                    Log.e(TAG, "Discarding unreadable entry " + file + ": " + e.getMessage());
+                    file.delete();
+                }
+            }
+        }
+        // Oldest first so sessions and their utterances keep their capture order
+        Collections.sort(entries, (a, b) -> a.createdMillis != b.createdMillis
+                ? Long.compare(a.createdMillis, b.createdMillis)
+                : Long.compare(a.sequence, b.sequence));
+        long maxSequence = -1;
+        synchronized (this) {
+            for (Entry entry : entries) {
+                List<Entry> sessionEntries = pending.get(entry.sessionId);
+                if (sessionEntries == null) {
+                    sessionEntries = new ArrayList<>();
+                    pending.put(entry.sessionId, sessionEntries);
+                }
+                sessionEntries.add(entry);
+                maxSequence = Math.max(maxSequence, entry.sequence);
+            }
+        }
+        nextSequence.set(maxSequence + 1);
+        if (!entries.isEmpty()) {
+            Log.i(TAG, "Restored " + entries.size() + " queued utterances");
+        }
+    }
+
+    private static Entry readHeader(DataInputStream in, File file) throws IOException {
+        if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+            throw new IOException("Not a queue entry");
+        }
+        String sessionId = in.readUTF();
+        long sequence = in.readLong();
+        long created = in.readLong();
+        int sampleRate = in.readInt();
+        String languageFrom = in.readUTF();
+        String languageTo = in.readUTF();
+        int audioLength = in.readInt();
+        return new Entry(file, sessionId, sequence, created, sampleRate, languageFrom, languageTo, audioLength);
+    }
+
+    // Stores 16-bit PCM as sample-to-sample differences before deflating
+    // Neighbouring speech samples are close together, so the differences compress far better than raw samples
+    static byte[] compress(byte[] pcm) {
+        byte[] deltas = new byte[pcm.length];
+        int previous = 0;
+        int i = 0;
+        for (; i + 1 < pcm.length; i += 2) {
+            int sample = (short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8));
+            int delta = sample - previous;
+            previous = sample;
+            deltas[i] = (byte) delta;
+            deltas[i + 1] = (byte) (delta >> 8);
+        }
+        // Copies a trailing odd byte unchanged
+        if (i < pcm.length) {
+            deltas[i] = pcm[i];
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(deltas);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pcm.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    // Reverses compress()
+    static byte[] decompress(byte[] compressed, int length) throws IOException {
+        byte[] pcm = new byte[length];
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        try {
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int read = inflater.inflate(pcm, offset, length - offset);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated queue entry");
+                }
+                offset += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt queue entry", e);
+        } finally {
+            inflater.end();
+        }
+
+        int previous = 0;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            int delta = (pcm[i] & 0xFF) | (pcm[i + 1] << 8);
+            int sample = (short) (previous + delta);
+            previous = sample;
+            pcm[i] = (byte) sample;
+            pcm[i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
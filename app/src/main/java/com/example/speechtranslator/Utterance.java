@@ -0,0 +1,144 @@
+package com.example.speechtranslator;
+
+import android.util.Log;
+
+import com.google.protobuf.ByteString;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// One stretch of speech from voice start to voice end
+// Each utterance owns its audio and collects its own results as it moves through the pipeline
+public class Utterance {
+    // Results for one of the languages an utterance is translated into
+    public static class Target {
+        private final String language;
+        private String translation = "";
+        private ByteString speech;
+
+        Target(String language) {
+            this.language = language;
+        }
+
+        public String getLanguage() {
+            return language;
+        }
+
+        public String getTranslation() {
+            return translation;
+        }
+
+        public void setTranslation(String translation) {
+            this.translation = translation;
+        }
+
+        public ByteString getSpeech() {
+            return speech;
+        }
+
+        public void setSpeech(ByteString speech) {
+            this.speech = speech;
+        }
+    }
+
+    private final long sequence;
+    // Languages.AUTO_DETECT until recognition has found out what was spoken
+    private String languageFrom;
+    private boolean languageDetected;
+    // In the order their translations are shown and spoken
+    private final List<Target> targets = new ArrayList<>();
+    // Long recordings spill to a memory-mapped file so they do not fill the heap
+    private final UtteranceAudio audio;
+    // One entry per recognition result, so the segments can be translated as a batch
+    private List<String> transcriptSegments = Collections.emptyList();
+    // Shown instead of the results when the utterance could not be translated right away
+    private String message;
+
+    // Audio beyond a small on-heap head is kept in spillDirectory, or all on the heap if it is null
+    public Utterance(long sequence, String languageFrom, List<String> languagesTo, File spillDirectory) {
+        this.sequence = sequence;
+        this.languageFrom = languageFrom;
+        this.audio = new UtteranceAudio(spillDirectory);
+        for (String languageTo : languagesTo) {
+            targets.add(new Target(languageTo));
+        }
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getLanguageFrom() {
+        return languageFrom;
+    }
+
+    // Replaces Languages.AUTO_DETECT with the language recognition found
+    public void setDetectedLanguage(String language) {
+        languageFrom = language;
+        languageDetected = true;
+    }
+
+    // Whether the source language was detected rather than picked
+    public boolean isLanguageDetected() {
+        return languageDetected;
+    }
+
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    public List<String> getLanguagesTo() {
+        List<String> languages = new ArrayList<>();
+        for (Target target : targets) {
+            languages.add(target.getLanguage());
+        }
+        return languages;
+    }
+
+    // Adds recorded audio, called from the capture thread
+    // If the spill file cannot be written the utterance keeps what was recorded so far
+    public void append(byte[] data, int size) {
+        try {
+            audio.append(data, size);
+        } catch (IOException e) {
+            Log.e("Utterance", "Could not store audio: " + e.getMessage());
+        }
+    }
+
+    // The recorded audio without copying it, valid until releaseAudio()
+    public ByteString getAudio() {
+        return audio.toByteString();
+    }
+
+    public long getAudioLength() {
+        return audio.length();
+    }
+
+    // Frees the audio once the utterance no longer needs it
+    public void releaseAudio() {
+        audio.release();
+    }
+
+    public String getTranscript() {
+        return String.join(" ", transcriptSegments);
+    }
+
+    public List<String> getTranscriptSegments() {
+        return transcriptSegments;
+    }
+
+    public void setTranscriptSegments(List<String> transcriptSegments) {
+        this.transcriptSegments = transcriptSegments;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.speechtranslator;
+
+import android.util.Log;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Recorded audio of one utterance, kept mostly off the Java heap
+// The first HEAD_BYTES stay in a small array; anything longer goes to a memory-mapped file in the spill directory
+// The audio is read back as a ByteString that wraps the array and the mapping without copying them
+// Without a spill directory everything stays on the heap
+public class UtteranceAudio {
+    private static final String TAG = "UtteranceAudio";
+    private static final String SPILL_PREFIX = "utterance-";
+    // About two seconds of 16 kHz audio
+    static final int HEAD_BYTES = 64 * 1024;
+    // Size of each mapped region of the spill file
+    static final int CHUNK_BYTES = 1024 * 1024;
+
+    private final File spillDirectory;
+    private byte[] head = new byte[HEAD_BYTES];
+    private int headLength;
+    private File spillFile;
+    private RandomAccessFile spill;
+    // Mapped regions of the spill file, all full except the last
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private long length;
+
+    public UtteranceAudio(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    // Removes spill files left behind by a run of the app that did not release them
+    public static void deleteSpillFiles(File spillDirectory) {
+        File[] files = spillDirectory.listFiles((dir, name) -> name.startsWith(SPILL_PREFIX));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    public synchronized void append(byte[] data, int size) throws IOException {
+        int offset = 0;
+        if (spill == null) {
+            int space = head.length - headLength;
+            if (size > space && spillDirectory == null) {
+                // Nowhere to spill to, so the head grows instead
+                byte[] grown = new byte[Math.max(head.length * 2, headLength + size)];
+                System.arraycopy(head, 0, grown, 0, headLength);
+                head = grown;
+                space = head.length - headLength;
+            }
+            int count = Math.min(size, space);
+            System.arraycopy(data, 0, head, headLength, count);
+            headLength += count;
+            length += count;
+            offset = count;
+        }
+        while (offset < size) {
+            MappedByteBuffer chunk = currentChunk();
+            int count = Math.min(size - offset, chunk.remaining());
+            chunk.put(data, offset, count);
+            length += count;
+            offset += count;
+        }
+    }
+
+    public synchronized long length() {
+        return length;
+    }
+
+    // Whether part of the audio is in the spill file
+    public synchronized boolean isSpilled() {
+        return spill != null;
+    }
+
+    // All the audio so far, sharing memory with the head and the mapping
+    // Only valid until release(), and must not be held while more audio is appended
+    public synchronized ByteString toByteString() {
+        ByteString audio = UnsafeByteOperations.unsafeWrap(head, 0, headLength);
+        for (MappedByteBuffer chunk : chunks) {
+            ByteBuffer written = chunk.duplicate();
+            written.flip();
+            audio = audio.concat(UnsafeByteOperations.unsafeWrap(written));
+        }
+        return audio;
+    }
+
+    // Drops the audio and deletes the spill file
+    public synchronized void release() {
+        head = new byte[0];
+        headLength = 0;
+        length = 0;
+        chunks.clear();
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close spill file: " + e.getMessage());
+            }
+            // The pages stay mapped until the buffers are collected, but the file itself goes now
+            spillFile.delete();
+            spill = null;
+        }
+    }
+
+    // The mapped region with space left, mapping a new one or creating the spill file as needed
+    private MappedByteBuffer currentChunk() throws IOException {
+        if (spill == null) {
+            spillFile = File.createTempFile(SPILL_PREFIX, ".pcm", spillDirectory);
+            spill = new RandomAccessFile(spillFile, "rw");
+        }
+        MappedByteBuffer last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (last == null || !last.hasRemaining()) {
+            last = spill.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() * CHUNK_BYTES, CHUNK_BYTES);
+            chunks.add(last);
+        }
+        return last;
+    }
+}
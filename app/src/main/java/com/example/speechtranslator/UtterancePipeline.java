@@ -0,0 +1,81 @@
+package com.example.speechtranslator;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs several utterances through recognition, translation and speech at the same time
+// Up to maxInFlight utterances are processed at once; later ones wait their turn
+// Finished utterances are delivered strictly in the order they were captured
+public class UtterancePipeline {
+    private static final String TAG = "UtterancePipeline";
+
+    // Does the work for one utterance, storing the results on it
+    public interface Processor {
+        void process(Utterance utterance) throws Exception;
+    }
+
+    // Receives finished utterances in capture order
+    public interface Listener {
+        void onUtteranceDelivered(Utterance utterance);
+    }
+
+    private final Processor processor;
+    private final File spillDirectory;
+    private final ExecutorService executor;
+    private final OrderedDelivery<Utterance> delivery;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Long utterances keep their audio in memory-mapped files in spillDirectory
+    public UtterancePipeline(int maxInFlight, File spillDirectory, Processor processor, Listener listener) {
+        this.processor = processor;
+        this.spillDirectory = spillDirectory;
+        // Files left over from an earlier run are no longer wanted
+        spillDirectory.mkdirs();
+        UtteranceAudio.deleteSpillFiles(spillDirectory);
+        this.executor = Executors.newFixedThreadPool(maxInFlight);
+        this.delivery = new OrderedDelivery<>(0, (sequence, utterance) -> {
+            inFlight.decrementAndGet();
+            listener.onUtteranceDelivered(utterance);
+        });
+    }
+
+    // Starts a new utterance with the next sequence number
+    // Every utterance created here must be submitted, or later ones will never be delivered
+    public Utterance newUtterance(String languageFrom, List<String> languagesTo) {
+        return new Utterance(nextSequence.getAndIncrement(), languageFrom, languagesTo, spillDirectory);
+    }
+
+    // Queues a finished recording for processing
+    public void submit(Utterance utterance) {
+        inFlight.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                processor.process(utterance);
+            } catch (Exception e) {
+                Log.e(TAG, "Utterance " + utterance.getSequence() + " failed: " + e.getMessage());
+                if (utterance.getMessage() == null) {
+                    utterance.setMessage("Could not translate");
+                }
+            } finally {
+                utterance.releaseAudio();
+            }
+            delivery.complete(utterance.getSequence(), utterance);
+        });
+    }
+
+    // Utterances submitted but not yet delivered
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
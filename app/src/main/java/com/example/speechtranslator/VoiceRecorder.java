@@ -20,11 +20,14 @@ import android.Manifest;
 import android.media.AudioFormat;
 import android.media.AudioRecord;
 import android.media.MediaRecorder;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresPermission;
 
+import java.util.Arrays;
+
 public class VoiceRecorder {
     // Array of sample rates to initialize the AudioRecord
     private static final int[] SAMPLE_RATE_OPTIONS= new int[]{16000,11025,22050,44100, 8000};
@@ -34,16 +37,35 @@ public class VoiceRecorder {
     private static final int AUDIO_ENCODING = AudioFormat.ENCODING_PCM_16BIT;
     // Minimum amplitude level to consider as voice activity
     private static final int AMPLITUDE_THRESHOLD = 1500;
-    // Duration after which to consider speech ended if voice is not detected
-    private static final int SPEECH_TIMEOUT_MILLIS = 2000;
     // Maximum duration for a single speech utterance
     private static final int MAX_SPEECH_LENGTH_MILLIS = 30 * 1000;
+    // Audio read per wake-up in low-power standby, much longer than a full-rate read
+    private static final int STANDBY_FRAME_MILLIS = 100;
+    // Only every Nth sample is looked at by the standby energy detector
+    private static final int STANDBY_DECIMATION = 4;
+    // Average amplitude a standby frame needs to count as sound
+    private static final int STANDBY_ENERGY_THRESHOLD = 400;
+    // Consecutive loud standby frames needed to wake up, which bounds wake-up latency to about 200 ms
+    private static final int STANDBY_WAKE_FRAMES = 2;
+    // Standby frames kept and handed over at the start of an utterance so its first syllable is not lost
+    private static final int PREROLL_FRAMES = 3;
+    // How long after waking the kept frames still count as the start of the utterance
+    // Full-rate frames heard in this time before voice is detected are kept too, so nothing is missing
+    // between the standby frames and the onset
+    private static final int PREROLL_VALID_MILLIS = 1000;
+    // Time without voice at full rate after which the recorder goes back to standby
+    private static final int IDLE_BEFORE_STANDBY_MILLIS = 3000;
+    // Capture states used for CPU accounting
+    private static final int MODE_STANDBY = 0;
+    private static final int MODE_IDLE = 1;
+    private static final int MODE_SPEECH = 2;
     // Callback interface to notify client about voice recording events
     private final onVoiceListener thisVoiceListener;
     // Android AudioRecord object used for capturing audio
-    private AudioRecord thisAudioRecord;
+    // Volatile so stop() can cut short a read in progress before it takes thisLock
+    private volatile AudioRecord thisAudioRecord;
     // Thread on which audio processing will occur
-    private Thread thisThread;
+    private volatile Thread thisThread;
     // Buffer to hold raw audio data read from AudioRecord
     private byte[] thisBuffer;
     // Lock object to synchronize accesss to shared resources
@@ -52,6 +74,33 @@ public class VoiceRecorder {
     private long thisLastVoiceHeardMillis = Long.MAX_VALUE;
     // Timestamp for when current voice utterance started
     private long thisVoiceStartedMillis;
+    // Decides how long a silence ends an utterance, learning the speaker's pauses as it goes
+    // Passed in so what it learned carries over from one recording session to the next
+    private final AdaptiveEndpointer thisEndpointer;
+    // Optional processing applied to each full-rate frame after voice detection, or null
+    private AudioFilterChain thisFilterChain;
+    // Whether to listen with the cheap standby detector while nobody is speaking
+    private boolean thisLowPowerStandby;
+    // Whether the recorder is currently in standby
+    private boolean thisInStandby;
+    // Buffer for the longer standby reads
+    private byte[] thisStandbyBuffer;
+    // Most recent standby frames, then the full-rate frames after waking, used as pre-roll
+    private byte[][] thisPreroll;
+    private int[] thisPrerollSizes;
+    private int thisPrerollNext;
+    private boolean thisPrerollPending;
+    // Number of consecutive loud standby frames
+    private int thisLoudFrames;
+    // Time of waking up or of the last voice, whichever is later
+    private long thisLastActivityMillis;
+    private long thisWakeMillis;
+    // Thread CPU and wall time spent in each capture mode, measured on the capture thread
+    private final long[] thisCpuMillis = new long[3];
+    private final long[] thisWallMillis = new long[3];
+    private int thisSpanMode = -1;
+    private long thisSpanCpuStart;
+    private long thisSpanWallStart;
     public static abstract class onVoiceListener {
         // Called when recorder starts detecting sound above threshold
         public void onVoiceStart() {
@@ -71,8 +120,23 @@ public class VoiceRecorder {
         }
     }
 
-    public VoiceRecorder(@NonNull onVoiceListener VoiceListener) {
+    public VoiceRecorder(@NonNull onVoiceListener VoiceListener, @NonNull AdaptiveEndpointer endpointer) {
         thisVoiceListener = VoiceListener;
+        thisEndpointer = endpointer;
+    }
+
+    // Enables low-power standby for long unattended sessions, must be called before start()
+    // While nobody speaks, the recorder reads long frames and checks a decimated energy level instead of running full VAD
+    // Sustained energy switches it to full-rate capture, and it drops back after IDLE_BEFORE_STANDBY_MILLIS of silence
+    public void setLowPowerStandby(boolean enabled) {
+        thisLowPowerStandby = enabled;
+    }
+
+    // Cleans up captured audio before it is handed to the listener, must be called before start()
+    // Voice is detected on the unprocessed audio, since gain control would lift background noise over the threshold
+    // Frames are filtered in the order they were captured; standby frames only once waking up makes them pre-roll
+    public void setFilterChain(AudioFilterChain filterChain) {
+        thisFilterChain = filterChain;
     }
 
     // Starts recording audio
@@ -87,6 +151,9 @@ public class VoiceRecorder {
         if (thisAudioRecord != null) {
             try {
                 Log.d("VoiceRecorder", "audioRecord returned successful");
+                if (thisFilterChain != null) {
+                    thisFilterChain.reset(thisAudioRecord.getSampleRate());
+                }
                 thisAudioRecord.startRecording();
                 thisThread = new Thread(new ProcessVoice());
                 thisThread.start();
@@ -120,6 +187,14 @@ public class VoiceRecorder {
 
     //Stops recording audio
     public void stop() {
+        // A standby read can block for STANDBY_FRAME_MILLIS while holding thisLock
+        // Stopping the AudioRecord makes that read return at once, and the interrupt ends the loop after it
+        Thread thread = thisThread;
+        AudioRecord audioRecord = thisAudioRecord;
+        if (thread != null && audioRecord != null) {
+            thread.interrupt();
+            audioRecord.stop();
+        }
         // If no other thread currently holds the lock on thisLock, current thread successfully
         // acquires the lock and is allowed to execute code within this block to ensure
         // thread-safe operations
@@ -148,6 +223,7 @@ public class VoiceRecorder {
         if (thisLastVoiceHeardMillis != Long.MAX_VALUE) {
             // Resets last voice heard timestamp
             thisLastVoiceHeardMillis = Long.MAX_VALUE;
+            thisEndpointer.onEnd();
             // Notifies callback that voice utterance has ended
             thisVoiceListener.onVoiceEnd();
         }
@@ -164,23 +240,29 @@ public class VoiceRecorder {
     // Attempts to create and initialize an AudioRecord object with one of the options for sample rates
     private AudioRecord createAudioRecord() {
         for (int sampleRate: SAMPLE_RATE_OPTIONS) {
-            Log.d("VoiceRecorder", "Trying sampleRate: " + sampleRate);
             // Get minimum buffer size required for current sample rate, channel, and encoding
             final int sizeInBytes = AudioRecord.getMinBufferSize(sampleRate, SINGLE_CHANNEL, AUDIO_ENCODING);
-            Log.d("VoiceRecorder", "Calculated buffer size: " + sizeInBytes);
             // If buffer size is invalid, skip to next sample rate
             if (sizeInBytes == AudioRecord.ERROR_BAD_VALUE) {
                 Log.w("VoiceRecorder", "Error bad value for sampleRate: " + sampleRate);
                 continue;
             }
             // Creates new AudioRecord instance
+            int traceSection = Tracer.begin(Tracer.AUDIO_RECORD_INIT, sampleRate);
             final AudioRecord audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate, SINGLE_CHANNEL, AUDIO_ENCODING, sizeInBytes);
-            Log.d("VoiceRecorder", "AudioRecord state for " + sampleRate + ": " + audioRecord.getState());
+            Tracer.end(Tracer.AUDIO_RECORD_INIT, audioRecord.getState(), traceSection);
             // Checks if AudioRecord object was successfully initialized
             if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
                 // Allocates audio data buffer with according size
                 thisBuffer = new byte[sizeInBytes];
-                Log.d("VoiceRecorder", "Returning audioRecord");
+                // Allocates standby buffers up front so standby never allocates while running
+                int standbyBytes = sampleRate * 2 * STANDBY_FRAME_MILLIS / 1000;
+                thisStandbyBuffer = new byte[standbyBytes];
+                // Room for the standby frames plus every full-rate frame read in PREROLL_VALID_MILLIS
+                int frameMillis = Math.max(1, sizeInBytes * 1000 / (sampleRate * 2));
+                int prerollFrames = PREROLL_FRAMES + PREROLL_VALID_MILLIS / frameMillis + 1;
+                thisPreroll = new byte[prerollFrames][Math.max(standbyBytes, sizeInBytes)];
+                thisPrerollSizes = new int[prerollFrames];
                 // Returns initialized AudioRecord object
                 return audioRecord;
             } else {
@@ -198,6 +280,7 @@ public class VoiceRecorder {
 
         // Main execution method of thread
         public void run() {
+            thisInStandby = thisLowPowerStandby;
             // Keeps running while thread is not interrupted
             while (true) {
                 // Acquires a lock for thread-safe access to shared resources
@@ -206,23 +289,40 @@ public class VoiceRecorder {
                     if (Thread.currentThread().isInterrupted()) {
                         break;
                     }
-                    Log.d("ProcessVoice", "Processing voice");
+                    trackMode();
+                    if (thisInStandby) {
+                        listenInStandby();
+                        continue;
+                    }
                     // Reads audio data from AudioRecord into buffer
                     final int size =  thisAudioRecord.read(thisBuffer, 0, thisBuffer.length);
+                    Tracer.instant(Tracer.CAPTURE_READ, size);
                     final long now = System.currentTimeMillis();
+                    final int level = voiceLevel(thisBuffer, size);
+                    if (thisFilterChain != null && size > 0) {
+                        thisFilterChain.process(thisBuffer, size);
+                    }
                     // Checks if voice activity is detected in current audio buffer
-                    if (isHearingVoice(thisBuffer, size)) {
+                    if (level > AMPLITUDE_THRESHOLD) {
                         // If this is first time voice is detected in current utterance
                         if (thisLastVoiceHeardMillis == Long.MAX_VALUE) {
                             // Saves down start time of voice utterance
                             thisVoiceStartedMillis = now;
+                            Tracer.instant(Tracer.VOICE_START, 0);
                             // Notifies callback that voice has started
                             thisVoiceListener.onVoiceStart();
+                            // Hands over the audio heard while waking up from standby
+                            if (thisPrerollPending && now - thisWakeMillis <= PREROLL_VALID_MILLIS) {
+                                deliverPreroll();
+                            }
+                            thisPrerollPending = false;
                         }
                         // Notifies callback with current audio data
                         thisVoiceListener.onVoice(thisBuffer, size);
                         // Updates timestamp of last voice detected
                         thisLastVoiceHeardMillis = now;
+                        thisEndpointer.onVoice(now, level);
+                        thisLastActivityMillis = now;
                         // Checks ojf maximum speech length has exceeded
                         if (now - thisVoiceStartedMillis > MAX_SPEECH_LENGTH_MILLIS) {
                             // Ends current utterance
@@ -232,26 +332,155 @@ public class VoiceRecorder {
                         // If no voice is currently detected but a voice utterance was in progress
                         // provides current (silent) audio data to callback
                         thisVoiceListener.onVoice(thisBuffer, size);
-                        // Checks if speech timeout has reached since last voice activity
-                        if (now - thisLastVoiceHeardMillis > SPEECH_TIMEOUT_MILLIS) {
+                        // Checks if the silence since last voice activity is long enough for this speaker
+                        if (thisEndpointer.isEndOfSpeech(now)) {
                             // Ends current utterance
                             end();
                         }
+                    } else if (thisPrerollPending) {
+                        // Just woken up and no voice yet; keeps the frame so the pre-roll reaches the onset
+                        if (now - thisWakeMillis <= PREROLL_VALID_MILLIS) {
+                            keepPreroll(thisBuffer, size, false);
+                        } else {
+                            // Too long ago to be the start of whatever is said next
+                            thisPrerollPending = false;
+                            Arrays.fill(thisPrerollSizes, 0);
+                        }
+                    } else if (thisLowPowerStandby && now - thisLastActivityMillis > IDLE_BEFORE_STANDBY_MILLIS) {
+                        // Nobody has spoken for a while, so goes back to the cheap detector
+                        thisInStandby = true;
+                        thisPrerollPending = false;
+                        Arrays.fill(thisPrerollSizes, 0);
                     }
                 }
             }
+            // Reports how much CPU listening cost, measured on this thread
+            trackMode();
+            logCpuUsage();
+            Log.i("VoiceRecorder", "Endpoint timeouts: mid-sentence " + thisEndpointer.getMidSentenceTimeout()
+                    + " ms, falling " + thisEndpointer.getFallingTimeout() + " ms, "
+                    + thisEndpointer.getPrematureEndCount() + " premature ends");
+        }
+    }
+
+    // Reads one long standby frame and wakes up to full-rate capture on sustained energy
+    private void listenInStandby() {
+        final int size = thisAudioRecord.read(thisStandbyBuffer, 0, thisStandbyBuffer.length);
+        Tracer.instant(Tracer.CAPTURE_READ, size);
+        if (size <= 0) {
+            return;
+        }
+        // Keeps the frame as pre-roll in case it turns out to be the start of speech
+        keepPreroll(thisStandbyBuffer, size, true);
+
+        if (averageAmplitude(thisStandbyBuffer, size) > STANDBY_ENERGY_THRESHOLD) {
+            thisLoudFrames++;
+        } else {
+            thisLoudFrames = 0;
+        }
+        if (thisLoudFrames >= STANDBY_WAKE_FRAMES) {
+            // Switches to full-rate capture, where full VAD decides whether this is speech
+            thisLoudFrames = 0;
+            thisInStandby = false;
+            thisPrerollPending = true;
+            filterPreroll();
+            thisWakeMillis = System.currentTimeMillis();
+            thisLastActivityMillis = thisWakeMillis;
+        }
+    }
+
+    // Adds a frame to the pre-roll ring, which stays in time order
+    // In standby only the last PREROLL_FRAMES are kept; after waking the ring has room for the rest
+    private void keepPreroll(byte[] buffer, int size, boolean standby) {
+        if (standby) {
+            thisPrerollSizes[(thisPrerollNext + thisPreroll.length - PREROLL_FRAMES) % thisPreroll.length] = 0;
+        }
+        System.arraycopy(buffer, 0, thisPreroll[thisPrerollNext], 0, size);
+        thisPrerollSizes[thisPrerollNext] = size;
+        thisPrerollNext = (thisPrerollNext + 1) % thisPreroll.length;
+    }
+
+    // Runs the kept standby frames through the filter chain, oldest first, on waking up
+    // Full-rate frames are filtered as they are read, so this keeps the chain's state moving forward in time
+    private void filterPreroll() {
+        if (thisFilterChain == null) {
+            return;
+        }
+        for (int i = 0; i < thisPreroll.length; i++) {
+            int index = (thisPrerollNext + i) % thisPreroll.length;
+            if (thisPrerollSizes[index] > 0) {
+                thisFilterChain.process(thisPreroll[index], thisPrerollSizes[index]);
+            }
+        }
+    }
+
+    // Passes the kept frames to the listener, oldest first, then forgets them
+    private void deliverPreroll() {
+        for (int i = 0; i < thisPreroll.length; i++) {
+            int index = (thisPrerollNext + i) % thisPreroll.length;
+            if (thisPrerollSizes[index] > 0) {
+                thisVoiceListener.onVoice(thisPreroll[index], thisPrerollSizes[index]);
+                thisPrerollSizes[index] = 0;
+            }
+        }
+    }
+
+    // Average absolute amplitude of every STANDBY_DECIMATION-th sample
+    private static int averageAmplitude(byte[] buffer, int size) {
+        long sum = 0;
+        int count = 0;
+        for (int i = 0; i < size - 1; i += 2 * STANDBY_DECIMATION) {
+            sum += Math.abs((short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8)));
+            count++;
+        }
+        return count == 0 ? 0 : (int) (sum / count);
+    }
+
+    // Attributes thread CPU time to standby, idle full-rate listening or speech
+    // Time is only sampled when the mode changes, so this costs nothing per frame
+    private void trackMode() {
+        int mode = thisInStandby ? MODE_STANDBY
+                : thisLastVoiceHeardMillis == Long.MAX_VALUE ? MODE_IDLE : MODE_SPEECH;
+        if (mode == thisSpanMode) {
+            return;
+        }
+        long cpu = SystemClock.currentThreadTimeMillis();
+        long wall = SystemClock.elapsedRealtime();
+        if (thisSpanMode >= 0) {
+            thisCpuMillis[thisSpanMode] += cpu - thisSpanCpuStart;
+            thisWallMillis[thisSpanMode] += wall - thisSpanWallStart;
+        }
+        thisSpanMode = mode;
+        thisSpanCpuStart = cpu;
+        thisSpanWallStart = wall;
+    }
+
+    // Logs CPU time per hour of listening without speech, for standby and for full-rate capture
+    private void logCpuUsage() {
+        Log.i("VoiceRecorder", "Idle CPU per hour: standby " + cpuMillisPerHour(MODE_STANDBY)
+                + " ms over " + thisWallMillis[MODE_STANDBY] + " ms, full rate " + cpuMillisPerHour(MODE_IDLE)
+                + " ms over " + thisWallMillis[MODE_IDLE] + " ms");
+    }
+
+    private long cpuMillisPerHour(int mode) {
+        if (thisWallMillis[mode] == 0) {
+            return 0;
         }
+        return thisCpuMillis[mode] * 60 * 60 * 1000 / thisWallMillis[mode];
     }
 
     // Ends current voice utterance
     private void end() {
         // Resets timestamp
         thisLastVoiceHeardMillis = Long.MAX_VALUE;
+        thisEndpointer.onEnd();
         thisVoiceListener.onVoiceEnd();
     }
 
-    // Method to determine if voice activity is present in audio buffer
-    private boolean isHearingVoice(byte[] buffer, int size) {
+    // Method to measure the loudest sample in audio buffer
+    // Voice activity is present if it is above AMPLITUDE_THRESHOLD
+    static int voiceLevel(byte[] buffer, int size) {
+        int level = 0;
         // Loops through buffer, processing two bytes at a time (for 16-bit PCM)
         for (int i = 0; i < size - 1; i += 2) {
             // Buffer has LINEAR16 in little endian format
@@ -263,11 +492,11 @@ public class VoiceRecorder {
             s <<= 8;
             // Adds absolute value of lower byte to get the 16-bit amplitude
             s += Math.abs(buffer[i]);
-            // If calculated amplitude is above defined threshold, returns true for voice activity
-            if (s > AMPLITUDE_THRESHOLD) {
-                return true;
+            // Keeps the highest amplitude, which the endpointer also uses to tell when speech is fading out
+            if (s > level) {
+                level = s;
             }
         }
-        return false;
+        return level;
     }
 }
@@ -0,0 +1,275 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class AdaptiveEndpointerTest {
+    // Frame length and voice threshold of the capture loop in VoiceRecorder, which measures levels with voiceLevel
+    private static final int FRAME_MILLIS = 20;
+    private static final int AMPLITUDE_THRESHOLD = 1500;
+    private static final int SAMPLE_RATE = 16000;
+    // The fixed timeout VoiceRecorder used before adaptive endpointing
+    private static final int FIXED_TIMEOUT_MILLIS = 2000;
+
+    // Either endpointer, driven the way VoiceRecorder drives it
+    private interface Endpointer {
+        void onVoice(long now, int level);
+
+        boolean isEndOfSpeech(long now);
+    }
+
+    // Endpoint latency and premature cut-offs over a corpus
+    private static class Result {
+        int endpoints;
+        int prematureEnds;
+        long totalLatencyMillis;
+
+        double meanLatencyMillis() {
+            int timely = endpoints - prematureEnds;
+            return timely == 0 ? 0 : (double) totalLatencyMillis / timely;
+        }
+
+        @Override
+        public String toString() {
+            return endpoints + " endpoints, mean latency " + Math.round(meanLatencyMillis()) + " ms, "
+                    + prematureEnds + " premature";
+        }
+    }
+
+    // Recorded or generated audio with the true start and end of each utterance in milliseconds
+    private static class Recording {
+        final short[] samples;
+        final List<long[]> utterances;
+
+        Recording(short[] samples, List<long[]> utterances) {
+            this.samples = samples;
+            this.utterances = utterances;
+        }
+    }
+
+    @Test
+    public void timeoutsStayWithinBounds() {
+        AdaptiveEndpointer quick = new AdaptiveEndpointer();
+        AdaptiveEndpointer slow = new AdaptiveEndpointer();
+        long now = 0;
+        for (int i = 0; i < 40; i++) {
+            quick.onVoice(now, 8000);
+            quick.isEndOfSpeech(now + 20);
+            quick.onVoice(now + 140, 8000);
+            slow.onVoice(now, 8000);
+            slow.isEndOfSpeech(now + 20);
+            slow.onVoice(now + 1900, 8000);
+            now += 5000;
+        }
+        assertEquals(AdaptiveEndpointer.MIN_TIMEOUT_MILLIS, quick.getFallingTimeout());
+        assertEquals(AdaptiveEndpointer.MIN_TIMEOUT_MILLIS, quick.getMidSentenceTimeout());
+        assertEquals(AdaptiveEndpointer.MAX_TIMEOUT_MILLIS, slow.getMidSentenceTimeout());
+    }
+
+    @Test
+    public void waitsLessAfterSpeechFadesOut() {
+        AdaptiveEndpointer endpointer = new AdaptiveEndpointer();
+        endpointer.onVoice(0, 8000);
+        endpointer.onVoice(20, 8000);
+        endpointer.isEndOfSpeech(40);
+        int midSentence = endpointer.getTimeout();
+
+        endpointer.onVoice(300, 8000);
+        for (int level = 8000, t = 320; level > 1500; level -= 500, t += 20) {
+            endpointer.onVoice(t, level);
+        }
+        endpointer.isEndOfSpeech(1000);
+        assertTrue(endpointer.getTimeout() < midSentence);
+    }
+
+    @Test
+    public void speechResumingAfterTimeoutCountsAsPremature() {
+        AdaptiveEndpointer endpointer = new AdaptiveEndpointer();
+        endpointer.onVoice(0, 8000);
+        assertFalse(endpointer.isEndOfSpeech(20));
+        assertTrue(endpointer.isEndOfSpeech(1500));
+        endpointer.onVoice(1800, 8000);
+        assertEquals(1, endpointer.getPrematureEndCount());
+    }
+
+    @Test
+    public void beatsFixedTimeoutOnSyntheticCorpus() {
+        Recording recording = syntheticSpeaker(new Random(7), 40);
+        Result fixed = evaluate(recording, fixedEndpointer());
+        Result adaptive = evaluate(recording, adaptiveEndpointer());
+        String report = "fixed " + fixed + "; adaptive " + adaptive;
+
+        assertEquals(report, 40, fixed.endpoints);
+        assertEquals(report, 40, adaptive.endpoints);
+        assertEquals(report, 0, adaptive.prematureEnds);
+        assertTrue(report, adaptive.meanLatencyMillis() < fixed.meanLatencyMillis() / 2);
+    }
+
+    // Runs both endpointers over recordings in the directory named by the endpoint.corpus property
+    // The adaptive one must end utterances sooner without cutting off more of them
+    // Each 16 kHz mono 16-bit name.wav needs a name.labels file with one "startMillis endMillis" line per utterance
+    @Test
+    public void reportsOnRecordedCorpus() throws IOException {
+        String corpus = System.getProperty("endpoint.corpus");
+        assumeTrue(corpus != null);
+        File[] files = new File(corpus).listFiles((dir, name) -> name.endsWith(".wav"));
+        assertNotNull(files);
+        for (File wav : files) {
+            File labels = new File(wav.getPath().replace(".wav", ".labels"));
+            Recording recording = new Recording(readWav(wav), readLabels(labels));
+            Result fixed = evaluate(recording, fixedEndpointer());
+            Result adaptive = evaluate(recording, adaptiveEndpointer());
+            String report = wav.getName() + ": fixed " + fixed + "; adaptive " + adaptive;
+            assertTrue(report, adaptive.meanLatencyMillis() <= fixed.meanLatencyMillis());
+            assertTrue(report, adaptive.prematureEnds <= fixed.prematureEnds);
+        }
+    }
+
+    private static Endpointer fixedEndpointer() {
+        return new Endpointer() {
+            long lastVoice = Long.MAX_VALUE;
+
+            public void onVoice(long now, int level) {
+                lastVoice = now;
+            }
+
+            public boolean isEndOfSpeech(long now) {
+                if (lastVoice != Long.MAX_VALUE && now - lastVoice > FIXED_TIMEOUT_MILLIS) {
+                    lastVoice = Long.MAX_VALUE;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static Endpointer adaptiveEndpointer() {
+        AdaptiveEndpointer endpointer = new AdaptiveEndpointer();
+        return new Endpointer() {
+            public void onVoice(long now, int level) {
+                endpointer.onVoice(now, level);
+            }
+
+            public boolean isEndOfSpeech(long now) {
+                return endpointer.isEndOfSpeech(now);
+            }
+        };
+    }
+
+    // Feeds the recording frame by frame and scores each endpoint against the labelled utterances
+    // An endpoint inside an utterance is premature; otherwise its latency is counted from the end of the last one
+    private static Result evaluate(Recording recording, Endpointer endpointer) {
+        Result result = new Result();
+        int frameSamples = SAMPLE_RATE * FRAME_MILLIS / 1000;
+        byte[] frame = new byte[2 * frameSamples];
+        for (int start = 0; start + frameSamples <= recording.samples.length; start += frameSamples) {
+            for (int i = 0; i < frameSamples; i++) {
+                frame[2 * i] = (byte) recording.samples[start + i];
+                frame[2 * i + 1] = (byte) (recording.samples[start + i] >> 8);
+            }
+            int level = VoiceRecorder.voiceLevel(frame, frame.length);
+            long now = (long) (start + frameSamples) * 1000 / SAMPLE_RATE;
+            if (level > AMPLITUDE_THRESHOLD) {
+                endpointer.onVoice(now, level);
+            } else if (endpointer.isEndOfSpeech(now)) {
+                result.endpoints++;
+                long previousEnd = -1;
+                for (long[] utterance : recording.utterances) {
+                    if (utterance[0] <= now && now < utterance[1]) {
+                        result.prematureEnds++;
+                        previousEnd = -1;
+                        break;
+                    }
+                    if (utterance[1] <= now) {
+                        previousEnd = utterance[1];
+                    }
+                }
+                if (previousEnd >= 0) {
+                    result.totalLatencyMillis += now - previousEnd;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Utterances of three to five words with short pauses between them, fading out on the last word,
+    // separated by long silences
+    private static Recording syntheticSpeaker(Random random, int count) {
+        List<Short> samples = new ArrayList<>();
+        List<long[]> utterances = new ArrayList<>();
+        appendSilence(samples, 500);
+        for (int u = 0; u < count; u++) {
+            long start = samples.size() * 1000L / SAMPLE_RATE;
+            int words = 3 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                boolean last = w == words - 1;
+                appendWord(samples, 200 + random.nextInt(300), last);
+                if (!last) {
+                    appendSilence(samples, 150 + random.nextInt(250));
+                }
+            }
+            utterances.add(new long[]{start, samples.size() * 1000L / SAMPLE_RATE});
+            appendSilence(samples, 3000);
+        }
+        short[] pcm = new short[samples.size()];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = samples.get(i);
+        }
+        return new Recording(pcm, utterances);
+    }
+
+    private static void appendWord(List<Short> samples, int millis, boolean fading) {
+        int count = SAMPLE_RATE * millis / 1000;
+        for (int i = 0; i < count; i++) {
+            double amplitude = fading ? 8000 - 6000.0 * i / count : 8000;
+            samples.add((short) (amplitude * Math.sin(2 * Math.PI * 220 * i / SAMPLE_RATE)));
+        }
+    }
+
+    private static void appendSilence(List<Short> samples, int millis) {
+        for (int i = 0; i < SAMPLE_RATE * millis / 1000; i++) {
+            samples.add((short) 0);
+        }
+    }
+
+    // Reads the samples from the data chunk of a 16-bit PCM wav file
+    private static short[] readWav(File file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.position(12);
+        while (bytes.remaining() >= 8) {
+            int id = bytes.getInt(bytes.position());
+            int size = bytes.getInt(bytes.position() + 4);
+            bytes.position(bytes.position() + 8);
+            // "data" read as a little-endian int
+            if (id == 0x61746164) {
+                short[] samples = new short[Math.min(size, bytes.remaining()) / 2];
+                bytes.asShortBuffer().get(samples);
+                return samples;
+            }
+            bytes.position(bytes.position() + size + (size & 1));
+        }
+        throw new IOException("No data chunk in " + file);
+    }
+
+    private static List<long[]> readLabels(File file) throws IOException {
+        List<long[]> utterances = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length >= 2) {
+                utterances.add(new long[]{Long.parseLong(fields[0]), Long.parseLong(fields[1])});
+            }
+        }
+        return utterances;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+// Measures the full capture-path chain on 20 ms frames of 16 kHz PCM
+// The budget is 1 ms per frame on a mid-range phone; a desktop JVM should come in far below it
+// Wall-clock timing is too noisy for every build, so it only runs with -Dbenchmark=true
+public class AudioFilterBenchmark {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_BYTES = 2 * SAMPLE_RATE * 20 / 1000;
+    private static final int WARM_UP_FRAMES = 20000;
+    private static final int MEASURED_FRAMES = 50000;
+    private static final long BUDGET_NANOS = 1000000;
+
+    @Test
+    public void fullChainStaysWithinFrameBudget() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        AudioFilterChain chain = new AudioFilterChain(
+                new HighPassFilter(80),
+                new PreEmphasisFilter(PreEmphasisFilter.DEFAULT_COEFFICIENT),
+                new AutomaticGainControl(2500, 200, 6, 20, 800));
+        chain.reset(SAMPLE_RATE);
+        short[] signal = AudioFiltersTest.sine(440, 3000, FRAME_BYTES / 2);
+        byte[] frame = new byte[FRAME_BYTES];
+
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            fill(frame, signal);
+            chain.process(frame, frame.length);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            fill(frame, signal);
+            chain.process(frame, frame.length);
+        }
+        long perFrame = (System.nanoTime() - start) / MEASURED_FRAMES;
+        assertTrue("Filter chain: " + perFrame + " ns per 20 ms frame", perFrame < BUDGET_NANOS);
+    }
+
+    private static void fill(byte[] frame, short[] signal) {
+        for (int i = 0; i < signal.length; i++) {
+            frame[2 * i] = (byte) signal[i];
+            frame[2 * i + 1] = (byte) (signal[i] >> 8);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AudioFiltersTest {
+    private static final int SAMPLE_RATE = 16000;
+    // 20 ms frames, as VoiceRecorder reads them
+    private static final int FRAME = 320;
+
+    @Test
+    public void highPassRemovesDcAndRumbleButKeepsSpeechBand() {
+        assertTrue(rmsAfter(new HighPassFilter(80), constant(5000, SAMPLE_RATE)) < 50);
+        assertTrue(rmsAfter(new HighPassFilter(80), sine(20, 8000, SAMPLE_RATE)) < 0.3 * rms(sine(20, 8000, SAMPLE_RATE)));
+        double speech = rms(sine(1000, 8000, SAMPLE_RATE));
+        assertEquals(speech, rmsAfter(new HighPassFilter(80), sine(1000, 8000, SAMPLE_RATE)), speech * 0.02);
+    }
+
+    @Test
+    public void preEmphasisFavoursHighFrequencies() {
+        PreEmphasisFilter filter = new PreEmphasisFilter(PreEmphasisFilter.DEFAULT_COEFFICIENT);
+        double low = rmsAfter(filter, sine(200, 8000, SAMPLE_RATE));
+        double high = rmsAfter(filter, sine(4000, 8000, SAMPLE_RATE));
+        assertTrue(high > 10 * low);
+    }
+
+    @Test
+    public void gainControlBringsQuietAndLoudSpeakersTogether() {
+        double quiet = rmsAfter(agc(), sine(300, 800, 5 * SAMPLE_RATE));
+        double loud = rmsAfter(agc(), sine(300, 20000, 5 * SAMPLE_RATE));
+        assertEquals(2500, quiet, 250);
+        assertEquals(2500, loud, 250);
+    }
+
+    @Test
+    public void gainControlLeavesSilenceAlone() {
+        AutomaticGainControl agc = agc();
+        double noise = rmsAfter(agc, sine(300, 100, 2 * SAMPLE_RATE));
+        assertEquals(1, agc.getGain(), 0.001);
+        assertEquals(rms(sine(300, 100, 2 * SAMPLE_RATE)), noise, 1);
+    }
+
+    @Test
+    public void gainIsCappedAndOutputNeverWraps() {
+        AutomaticGainControl agc = agc();
+        short[] samples = sine(300, 300, 5 * SAMPLE_RATE);
+        run(agc, samples);
+        assertEquals(6, agc.getGain(), 0.01);
+
+        // A sudden shout after the gain has risen clips instead of wrapping around
+        short[] input = sine(300, 30000, FRAME);
+        short[] shout = input.clone();
+        agc.process(shout, FRAME);
+        for (int i = 0; i < FRAME; i++) {
+            assertTrue(Math.signum(shout[i]) == Math.signum(input[i]));
+            assertTrue(Math.abs(shout[i]) >= Math.abs(input[i]));
+        }
+    }
+
+    @Test
+    public void chainFiltersLittleEndianPcmInPlace() {
+        AudioFilterChain chain = new AudioFilterChain(new HighPassFilter(80));
+        chain.reset(SAMPLE_RATE);
+        byte[] pcm = new byte[2 * SAMPLE_RATE];
+        for (int i = 0; i < pcm.length; i += 2) {
+            pcm[i] = (byte) 3000;
+            pcm[i + 1] = (byte) (3000 >> 8);
+        }
+        for (int offset = 0; offset < pcm.length; offset += 2 * FRAME) {
+            byte[] frame = new byte[2 * FRAME];
+            System.arraycopy(pcm, offset, frame, 0, frame.length);
+            chain.process(frame, frame.length);
+            System.arraycopy(frame, 0, pcm, offset, frame.length);
+        }
+        short last = (short) ((pcm[pcm.length - 2] & 0xFF) | (pcm[pcm.length - 1] << 8));
+        assertTrue(Math.abs(last) < 10);
+    }
+
+    private static AutomaticGainControl agc() {
+        return new AutomaticGainControl(2500, 200, 6, 20, 800);
+    }
+
+    // RMS of the last quarter of the signal, after the filter has settled, processed in frames
+    private static double rmsAfter(AudioFilter filter, short[] samples) {
+        filter.reset(SAMPLE_RATE);
+        run(filter, samples);
+        short[] tail = new short[samples.length / 4];
+        System.arraycopy(samples, samples.length - tail.length, tail, 0, tail.length);
+        return rms(tail);
+    }
+
+    private static void run(AudioFilter filter, short[] samples) {
+        filter.reset(SAMPLE_RATE);
+        short[] frame = new short[FRAME];
+        for (int offset = 0; offset + FRAME <= samples.length; offset += FRAME) {
+            System.arraycopy(samples, offset, frame, 0, FRAME);
+            filter.process(frame, FRAME);
+            System.arraycopy(frame, 0, samples, offset, FRAME);
+        }
+    }
+
+    static short[] sine(double hz, double amplitude, int count) {
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = (short) (amplitude * Math.sin(2 * Math.PI * hz * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static short[] constant(int value, int count) {
+        short[] samples = new short[count];
+        java.util.Arrays.fill(samples, (short) value);
+        return samples;
+    }
+
+    static double rms(short[] samples) {
+        double sum = 0;
+        for (short sample : samples) {
+            sum += (double) sample * sample;
+        }
+        return Math.sqrt(sum / samples.length);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BandwidthEstimatorTest {
+    // Five seconds of speech
+    private static final long AUDIO_MILLIS = 5000;
+    private static final long TARGET_MILLIS = 1500;
+
+    @Test
+    public void separatesRoundTripFromTransferTime() {
+        BandwidthEstimator estimator = new BandwidthEstimator();
+        // 200 ms round trip on a 256 kbit/s uplink, with a mix of compressed and uncompressed uploads
+        long[] sizes = {160000, 15000, 96000, 9000, 128000, 30000};
+        long[] audio = {5000, 5000, 3000, 3000, 4000, 10000};
+        for (int i = 0; i < sizes.length; i++) {
+            estimator.onUpload(sizes[i], audio[i], 200 + sizes[i] * 8 / 256, 1);
+        }
+        assertEquals(200, estimator.getRttMillis(), 20);
+        assertEquals(256, estimator.getBandwidthKbps(), 256 * 0.1);
+        assertEquals(200 + 64000 * 8 / 256, estimator.predictMillis(64000), 30);
+    }
+
+    @Test
+    public void learnsBandwidthFromSimilarUploads() {
+        BandwidthEstimator estimator = new BandwidthEstimator();
+        for (int i = 0; i < 5; i++) {
+            estimator.onUpload(100000, 3125, BandwidthEstimator.DEFAULT_RTT_MILLIS + 8000, 1);
+        }
+        assertEquals(BandwidthEstimator.DEFAULT_RTT_MILLIS, estimator.getRttMillis(), 0.001);
+        assertEquals(100, estimator.getBandwidthKbps(), 1);
+    }
+
+    @Test
+    public void roundTripRecoversOnceQuickUploadsAreForgotten() {
+        BandwidthEstimator estimator = new BandwidthEstimator();
+        // A burst of uploads the same size, one of them unusually quick
+        estimator.onUpload(50000, 1563, 100, 1);
+        assertEquals(100, estimator.getRttMillis(), 0.001);
+        for (int i = 0; i < 16; i++) {
+            estimator.onUpload(50000, 1563, BandwidthEstimator.DEFAULT_RTT_MILLIS + 4000, 1);
+        }
+        assertEquals(BandwidthEstimator.DEFAULT_RTT_MILLIS, estimator.getRttMillis(), 0.001);
+        assertEquals(100, estimator.getBandwidthKbps(), 1);
+    }
+
+    @Test
+    public void countsUploadsThatSharedTheLinkAtTheirShare() {
+        BandwidthEstimator estimator = new BandwidthEstimator();
+        // Two uploads at a time on a 256 kbit/s uplink, each getting half of it
+        long[] sizes = {80000, 7500, 48000, 4500, 64000, 15000};
+        long[] audio = {2500, 2500, 1500, 1500, 2000, 5000};
+        for (int i = 0; i < sizes.length; i++) {
+            estimator.onUpload(sizes[i], audio[i], 200 + 2 * sizes[i] * 8 / 256, 2);
+        }
+        assertEquals(200, estimator.getRttMillis(), 20);
+        assertEquals(256, estimator.getBandwidthKbps(), 256 * 0.1);
+    }
+
+    @Test
+    public void linkEstimateOnlyCountsUntilUploadsAreMeasured() {
+        BandwidthEstimator estimator = new BandwidthEstimator();
+        estimator.setLinkEstimate(2000);
+        assertEquals(2000, estimator.getBandwidthKbps(), 0.001);
+        estimator.onUpload(100000, 3125, BandwidthEstimator.DEFAULT_RTT_MILLIS + 8000, 1);
+        estimator.setLinkEstimate(2000);
+        assertEquals(100, estimator.getBandwidthKbps(), 1);
+
+        estimator.reset();
+        assertEquals(0, estimator.getSampleCount());
+        assertEquals(BandwidthEstimator.DEFAULT_BANDWIDTH_KBPS, estimator.getBandwidthKbps(), 0.001);
+    }
+
+    @Test
+    public void choosesProfileByLinkSpeed() {
+        assertEquals(AudioProfile.PCM_16K, AudioProfile.choose(link(5000, 50), AUDIO_MILLIS, TARGET_MILLIS, true));
+        // 3G: uncompressed audio would take over four seconds
+        assertEquals(AudioProfile.AMR_WB, AudioProfile.choose(link(384, 300), AUDIO_MILLIS, TARGET_MILLIS, true));
+        assertEquals(AudioProfile.PCM_8K, AudioProfile.choose(link(1000, 300), AUDIO_MILLIS, TARGET_MILLIS, false));
+    }
+
+    @Test
+    public void fallsBackToSmallestProfileWhenNothingFits() {
+        BandwidthEstimator slow = link(16, 1000);
+        assertEquals(AudioProfile.AMR_WB, AudioProfile.choose(slow, AUDIO_MILLIS, TARGET_MILLIS, true));
+        assertEquals(AudioProfile.PCM_8K, AudioProfile.choose(slow, AUDIO_MILLIS, TARGET_MILLIS, false));
+    }
+
+    @Test
+    public void separatesServerTimeOnFastLink() {
+        // Recognition takes 300 ms per second of audio; on 50 Mbit/s that dwarfs the transfer
+        List<AudioProfile> chosen = simulate(50000, 80, 300);
+        assertEquals(Collections.nCopies(10, AudioProfile.PCM_16K), chosen.subList(10, 20));
+    }
+
+    @Test
+    public void keepsCompressingOnSlowLinkWithServerTime() {
+        List<AudioProfile> chosen = simulate(384, 300, 300);
+        assertEquals(Collections.nCopies(10, AudioProfile.AMR_WB), chosen.subList(10, 20));
+    }
+
+    // Sends 20 utterances of 4 to 8 seconds over a simulated link, returning the profile chosen for each
+    private static List<AudioProfile> simulate(int kbps, int rttMillis, int serverMillisPerSecond) {
+        BandwidthEstimator estimator = new BandwidthEstimator();
+        List<AudioProfile> chosen = new ArrayList<>();
+        long[] lengths = {4000, 6000, 8000, 5000, 7000};
+        for (int i = 0; i < 20; i++) {
+            long audioMillis = lengths[i % lengths.length];
+            AudioProfile profile = AudioProfile.choose(estimator, audioMillis, TARGET_MILLIS, true);
+            long bytes = profile.estimateBytes(audioMillis);
+            estimator.onUpload(bytes, audioMillis,
+                    rttMillis + serverMillisPerSecond * audioMillis / 1000 + bytes * 8 / kbps, 1);
+            chosen.add(profile);
+        }
+        assertEquals(serverMillisPerSecond, estimator.getServerMillisPerSecond(), serverMillisPerSecond * 0.1);
+        assertEquals(kbps, estimator.getBandwidthKbps(), kbps * 0.1);
+        return chosen;
+    }
+
+    // Estimator that has measured a link with the given uplink bandwidth and round-trip time,
+    // from uploads alternating between uncompressed and compressed audio
+    private static BandwidthEstimator link(int kbps, int rttMillis) {
+        BandwidthEstimator estimator = new BandwidthEstimator();
+        for (long size = 10000; size <= 80000; size += 10000) {
+            long audioMillis = size / 10000 % 2 == 0 ? size / 32 : size / 3;
+            estimator.onUpload(size, audioMillis, rttMillis + size * 8 / kbps, 1);
+        }
+        return estimator;
+    }
+}
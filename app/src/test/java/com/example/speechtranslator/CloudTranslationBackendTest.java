@@ -0,0 +1,96 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CloudTranslationBackendTest {
+    // Local stand-in for the Cloud Translation API that upper-cases each segment
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int status = 200;
+    private volatile String lastTarget;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/translate", exchange -> {
+            requests.incrementAndGet();
+            JsonObject request = JsonParser.parseReader(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)).getAsJsonObject();
+            lastTarget = request.get("target").getAsString();
+            JsonArray translations = new JsonArray();
+            for (JsonElement segment : request.getAsJsonArray("q")) {
+                JsonObject translation = new JsonObject();
+                translation.addProperty("translatedText", segment.getAsString().toUpperCase());
+                translations.add(translation);
+            }
+            JsonObject data = new JsonObject();
+            data.add("translations", translations);
+            JsonObject response = new JsonObject();
+            response.add("data", data);
+
+            byte[] bytes = (status == 200 ? response.toString() : "{\"error\":\"quota\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private CloudTranslationBackend backend() throws IOException {
+        return new CloudTranslationBackend("http://127.0.0.1:" + server.getAddress().getPort() + "/translate", null);
+    }
+
+    @Test
+    public void translatesBatchInOneRequest() throws Exception {
+        List<String> translations = backend().translate("en", "es", Arrays.asList("hello", "good morning", "thank you"));
+        assertEquals(Arrays.asList("HELLO", "GOOD MORNING", "THANK YOU"), translations);
+        assertEquals(1, requests.get());
+        assertEquals("es", lastTarget);
+    }
+
+    @Test
+    public void splitsLargeBatchesAndKeepsOrder() throws Exception {
+        List<String> segments = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            segments.add("segment " + i);
+        }
+        List<String> translations = backend().translate("en", "vi", segments);
+        assertEquals(300, translations.size());
+        for (int i = 0; i < 300; i++) {
+            assertEquals("SEGMENT " + i, translations.get(i));
+        }
+        assertEquals(3, requests.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void reportsServerErrors() throws Exception {
+        status = 429;
+        backend().translate("en", "fr", Arrays.asList("hello"));
+    }
+}
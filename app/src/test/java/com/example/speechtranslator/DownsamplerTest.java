@@ -0,0 +1,35 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+public class DownsamplerTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void keepsSpeechAndRemovesWhatWouldAlias() throws Exception {
+        double speech = AudioFiltersTest.rms(AudioFiltersTest.sine(1000, 8000, SAMPLE_RATE));
+        short[] kept = halveSampleRate(AudioFiltersTest.sine(1000, 8000, SAMPLE_RATE));
+        assertEquals(SAMPLE_RATE / 2, kept.length);
+        assertEquals(speech, AudioFiltersTest.rms(kept), speech * 0.05);
+        // 6 kHz is above the new Nyquist frequency and would fold back to 2 kHz
+        assertTrue(AudioFiltersTest.rms(halveSampleRate(AudioFiltersTest.sine(6000, 8000, SAMPLE_RATE))) < 0.05 * speech);
+    }
+
+    private static short[] halveSampleRate(short[] samples) throws Exception {
+        byte[] pcm = new byte[2 * samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            pcm[2 * i] = (byte) samples[i];
+            pcm[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        byte[] out = Downsampler.halveSampleRate(ByteString.copyFrom(pcm)).toByteArray();
+        short[] result = new short[out.length / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (short) ((out[2 * i] & 0xFF) | (out[2 * i + 1] << 8));
+        }
+        return result;
+    }
+}
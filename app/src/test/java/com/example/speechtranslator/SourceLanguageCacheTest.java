@@ -0,0 +1,58 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class SourceLanguageCacheTest {
+    @Test
+    public void offersTargetsBeforeFallbackButNeverAsPrimary() {
+        SourceLanguageCache cache = new SourceLanguageCache(Languages.ALL, null);
+        assertEquals(Arrays.asList("English", "Arabic", "Vietnamese", "Spanish"),
+                cache.getCandidates(Collections.singletonList("Arabic")));
+    }
+
+    @Test
+    public void startsFromPreferredLanguageWithoutHistory() {
+        SourceLanguageCache cache = new SourceLanguageCache(Languages.ALL, "French");
+        assertEquals(Arrays.asList("French", "English", "Vietnamese", "Spanish"),
+                cache.getCandidates(Collections.singletonList("English")));
+        cache.remember("Cantonese");
+        assertEquals("Cantonese", cache.getCandidates(Collections.singletonList("English")).get(0));
+        // A target the speaker was last detected in still does not become the primary language
+        cache.remember("English");
+        assertEquals(Arrays.asList("Cantonese", "English", "French", "Vietnamese"),
+                cache.getCandidates(Collections.singletonList("English")));
+    }
+
+    @Test
+    public void putsMostRecentlyDetectedFirst() {
+        SourceLanguageCache cache = new SourceLanguageCache(Languages.ALL, null);
+        cache.remember("French");
+        cache.remember("Cantonese");
+        cache.remember("French");
+        assertEquals(Arrays.asList("French", "Cantonese", "Spanish", "English"),
+                cache.getCandidates(Collections.singletonList("Spanish")));
+    }
+
+    @Test
+    public void neverOffersMoreThanSpeechToTextAccepts() {
+        SourceLanguageCache cache = new SourceLanguageCache(Languages.ALL, null);
+        for (String language : Languages.ALL) {
+            cache.remember(language);
+        }
+        assertEquals(SourceLanguageCache.MAX_CANDIDATES, cache.getCandidates(Languages.ALL).size());
+        assertEquals("Arabic", cache.getCandidates(Collections.emptyList()).get(0));
+    }
+
+    @Test
+    public void mapsReportedCodesBackToLanguages() {
+        assertEquals("English", Languages.fromRecognitionCode("en-us"));
+        assertEquals("Cantonese", Languages.fromRecognitionCode("yue-hant-hk"));
+        assertEquals("Arabic", Languages.fromRecognitionCode("ar-EG"));
+        assertNull(Languages.fromRecognitionCode("de-de"));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+public class TextToSpeechTest {
+    private static final byte[] SAMPLES = {1, 2, 3, 4, 5, 6};
+
+    @Test
+    public void returnsSamplesAfterHeader() {
+        ByteString wav = wav(chunk("fmt ", new byte[16], 16), chunk("data", SAMPLES, SAMPLES.length));
+        assertEquals(ByteString.copyFrom(SAMPLES), TextToSpeech.stripWavHeader(wav));
+    }
+
+    @Test
+    public void skipsPaddingAfterOddSizedChunk() {
+        ByteString wav = wav(chunk("LIST", new byte[] {9, 9, 9, 0}, 3), chunk("data", SAMPLES, SAMPLES.length));
+        assertEquals(ByteString.copyFrom(SAMPLES), TextToSpeech.stripWavHeader(wav));
+    }
+
+    @Test
+    public void unsetDataSizeRunsToEnd() {
+        ByteString zero = wav(chunk("fmt ", new byte[16], 16), chunk("data", SAMPLES, 0));
+        assertEquals(ByteString.copyFrom(SAMPLES), TextToSpeech.stripWavHeader(zero));
+        ByteString streamed = wav(chunk("fmt ", new byte[16], 16), chunk("data", SAMPLES, 0xFFFFFFFF));
+        assertEquals(ByteString.copyFrom(SAMPLES), TextToSpeech.stripWavHeader(streamed));
+    }
+
+    @Test
+    public void dataSizePastEndIsCut() {
+        ByteString wav = wav(chunk("data", SAMPLES, 1000));
+        assertEquals(ByteString.copyFrom(SAMPLES), TextToSpeech.stripWavHeader(wav));
+    }
+
+    @Test
+    public void leavesAudioWithoutUsableHeaderAlone() {
+        ByteString raw = ByteString.copyFrom(SAMPLES);
+        assertSame(raw, TextToSpeech.stripWavHeader(raw));
+        // A chunk before the data claiming to be huge must not loop or jump backwards
+        ByteString broken = wav(chunk("fmt ", new byte[16], 0xFFFFFFFF), chunk("data", SAMPLES, SAMPLES.length));
+        assertSame(broken, TextToSpeech.stripWavHeader(broken));
+    }
+
+    // RIFF/WAVE file made of the given chunks
+    private static ByteString wav(byte[]... chunks) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('W');
+        body.write('A');
+        body.write('V');
+        body.write('E');
+        for (byte[] chunk : chunks) {
+            body.write(chunk, 0, chunk.length);
+        }
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write('R');
+        file.write('I');
+        file.write('F');
+        file.write('F');
+        writeInt(file, body.size());
+        byte[] bytes = body.toByteArray();
+        file.write(bytes, 0, bytes.length);
+        return ByteString.copyFrom(file.toByteArray());
+    }
+
+    // Chunk holding payload, with size written as given rather than as the payload's length
+    private static byte[] chunk(String id, byte[] payload, int size) {
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        for (char c : id.toCharArray()) {
+            chunk.write(c);
+        }
+        writeInt(chunk, size);
+        chunk.write(payload, 0, payload.length);
+        return chunk.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write(value >> (8 * i));
+        }
+    }
+}
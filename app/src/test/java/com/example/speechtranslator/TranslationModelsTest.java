@@ -0,0 +1,60 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TranslationModelsTest {
+    @Test
+    public void waitingForWifiIsOnlyReusedByWifiRequests() {
+        ModelPreparation preparation = new ModelPreparation();
+        assertFalse(preparation.canReuse(true));
+        preparation.start(true);
+        assertTrue(preparation.canReuse(true));
+        assertFalse(preparation.canReuse(false));
+
+        int generation = preparation.start(false);
+        assertTrue(preparation.canReuse(true));
+        assertTrue(preparation.canReuse(false));
+        preparation.update(generation, ModelPreparation.Readiness.FAILED);
+        assertFalse(preparation.canReuse(false));
+    }
+
+    @Test
+    public void lateFailureOfReplacedAttemptIsIgnored() {
+        ModelPreparation preparation = new ModelPreparation();
+        int waitingForWifi = preparation.start(true);
+        int anyNetwork = preparation.start(false);
+        assertTrue(preparation.update(anyNetwork, ModelPreparation.Readiness.WARMING_UP));
+        assertTrue(preparation.update(anyNetwork, ModelPreparation.Readiness.READY));
+
+        assertFalse(preparation.update(waitingForWifi, ModelPreparation.Readiness.FAILED));
+        assertEquals(ModelPreparation.Readiness.READY, preparation.getReadiness());
+        assertTrue(preparation.canReuse(false));
+    }
+
+    @Test
+    public void usageHalvesEveryHalfLife() {
+        assertEquals(8, PairUsage.decay(8, 0), 1e-6);
+        assertEquals(4, PairUsage.decay(8, PairUsage.HALF_LIFE_MILLIS), 1e-5);
+        assertEquals(1, PairUsage.decay(8, 3 * PairUsage.HALF_LIFE_MILLIS), 1e-5);
+        // A clock that went backwards does not inflate the score
+        assertEquals(8, PairUsage.decay(8, -1000), 1e-6);
+    }
+
+    @Test
+    public void predictsRecentlyUsedPairsFirst() {
+        Map<String, Float> scores = new HashMap<>();
+        // Heavy use a month ago counts for less than light use today
+        scores.put("en>es", PairUsage.decay(20, 4 * PairUsage.HALF_LIFE_MILLIS));
+        scores.put("en>vi", PairUsage.decay(3, 0));
+        scores.put("ar>en", PairUsage.decay(2, PairUsage.HALF_LIFE_MILLIS / 7));
+        scores.put("fr>en", PairUsage.decay(1, 0));
+        assertEquals(Arrays.asList("en>vi", "ar>en", "en>es"), PairUsage.mostUsed(scores, 3));
+        assertEquals(4, PairUsage.mostUsed(scores, 10).size());
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class UploadQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Stand-in for the Speech-to-Text backend whose availability can be switched on and off
+    private static class FakeBackend implements UploadQueue.Uploader {
+        final AtomicBoolean available = new AtomicBoolean();
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        // Audio the backend rejects outright, as it would a malformed request
+        volatile String rejected;
+        // Released once per upload attempt, so tests can wait for attempts instead of sleeping
+        final Semaphore attempts = new Semaphore(0);
+
+        public void upload(UploadQueue.Entry entry) throws Exception {
+            try {
+                String audio = new String(entry.readAudio(), "UTF-8");
+                if (audio.equals(rejected)) {
+                    throw new IllegalArgumentException("invalid argument");
+                }
+                if (!available.get()) {
+                    throw new IOException("offline");
+                }
+                received.add(entry.getSessionId() + ":" + audio);
+            } finally {
+                attempts.release();
+            }
+        }
+
+        void awaitAttempts(int count) throws InterruptedException {
+            assertTrue(attempts.tryAcquire(count, 5, TimeUnit.SECONDS));
+        }
+    }
+
+    private FakeBackend backend;
+    private UploadQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        backend = new FakeBackend();
+        queue = new UploadQueue(folder.newFolder("queue"), backend, 2, 4);
+        queue.setBackoff(10, 40);
+    }
+
+    @After
+    public void tearDown() {
+        queue.shutdown();
+    }
+
+    @Test
+    public void holdsEntriesWhileOfflineAndDrainsInSessionOrder() throws Exception {
+        queue.enqueue("a", 16000, "English", "Spanish", "a0".getBytes("UTF-8"));
+        queue.enqueue("b", 16000, "English", "Spanish", "b0".getBytes("UTF-8"));
+        queue.enqueue("a", 16000, "English", "Spanish", "a1".getBytes("UTF-8"));
+        queue.enqueue("a", 16000, "English", "Spanish", "a2".getBytes("UTF-8"));
+        queue.enqueue("b", 16000, "English", "Spanish", "b1".getBytes("UTF-8"));
+        queue.enqueue("a", 16000, "English", "Spanish", "a3".getBytes("UTF-8"));
+
+        queue.drain();
+        backend.awaitAttempts(1);
+        assertEquals(6, queue.getDepth());
+        assertTrue(backend.received.isEmpty());
+
+        backend.available.set(true);
+        queue.drain();
+        waitForEmpty();
+
+        assertEquals(6, backend.received.size());
+        assertEquals(6, queue.getUploadedCount());
+        assertInOrder("a", "a:a0", "a:a1", "a:a2", "a:a3");
+        assertInOrder("b", "b:b0", "b:b1");
+    }
+
+    @Test
+    public void retriesWithBackoffWhenBackendComesBack() throws Exception {
+        queue.enqueue("a", 16000, "English", "French", "a0".getBytes("UTF-8"));
+        queue.drain();
+        backend.awaitAttempts(1);
+        assertEquals(1, queue.getDepth());
+
+        // No new drain() call: the backoff timer alone should pick the entry up
+        backend.available.set(true);
+        waitForEmpty();
+        assertEquals(Collections.singletonList("a:a0"), backend.received);
+    }
+
+    @Test
+    public void dropsEntriesThatCanNeverUpload() throws Exception {
+        backend.available.set(true);
+        backend.rejected = "a0";
+        queue.enqueue("a", 16000, "English", "French", "a0".getBytes("UTF-8"));
+        queue.enqueue("a", 16000, "English", "French", "a1".getBytes("UTF-8"));
+        queue.drain();
+        waitForEmpty();
+        // Tried once, then the rest of the session went ahead without waiting for backoff
+        assertEquals(Collections.singletonList("a:a1"), backend.received);
+        assertEquals(2, backend.attempts.availablePermits());
+    }
+
+    @Test
+    public void drainsEntriesQueuedAfterGoingIdle() throws Exception {
+        backend.available.set(true);
+        queue.enqueue("a", 16000, "English", "French", "a0".getBytes("UTF-8"));
+        queue.drain();
+        waitForEmpty();
+        // Queued while online, e.g. after a brief outage, with no network change to call drain()
+        queue.enqueue("a", 16000, "English", "French", "a1".getBytes("UTF-8"));
+        waitForEmpty();
+        assertEquals(Arrays.asList("a:a0", "a:a1"), backend.received);
+    }
+
+    @Test
+    public void restoresEntriesAfterRestart() throws Exception {
+        File directory = folder.newFolder("restart");
+        UploadQueue first = new UploadQueue(directory, backend, 1, 4);
+        first.enqueue("a", 8000, "Vietnamese", "English", "a0".getBytes("UTF-8"));
+        first.enqueue("a", 8000, "Vietnamese", "English", "a1".getBytes("UTF-8"));
+        // Enqueueing started an upload, which must fail before the restart rather than race with it
+        backend.awaitAttempts(1);
+        first.shutdown();
+
+        queue.shutdown();
+        queue = new UploadQueue(directory, backend, 1, 4);
+        assertEquals(2, queue.getDepth());
+        backend.available.set(true);
+        queue.drain();
+        waitForEmpty();
+        assertEquals(2, backend.received.size());
+        assertEquals("a:a0", backend.received.get(0));
+        assertEquals("a:a1", backend.received.get(1));
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void compressionRoundTripsPcm() throws Exception {
+        byte[] pcm = new byte[32001];
+        for (int i = 0; i + 1 < pcm.length; i += 2) {
+            short sample = (short) (12000 * Math.sin(i / 40.0) * Math.sin(i / 3000.0));
+            pcm[i] = (byte) sample;
+            pcm[i + 1] = (byte) (sample >> 8);
+        }
+        pcm[pcm.length - 1] = 42;
+
+        byte[] compressed = UploadQueue.compress(pcm);
+        assertTrue(compressed.length < pcm.length * 3 / 4);
+        assertArrayEquals(pcm, UploadQueue.decompress(compressed, pcm.length));
+    }
+
+    private void waitForEmpty() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, queue.getDepth());
+    }
+
+    private void assertInOrder(String session, String... expected) {
+        List<String> actual = new ArrayList<>();
+        synchronized (backend.received) {
+            for (String item : backend.received) {
+                if (item.startsWith(session + ":")) {
+                    actual.add(item);
+                }
+            }
+        }
+        assertEquals(Arrays.asList(expected), actual);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class UtteranceAudioTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shortAudioStaysOnHeap() throws Exception {
+        File directory = folder.newFolder();
+        UtteranceAudio audio = new UtteranceAudio(directory);
+        byte[] data = frames(1000);
+        audio.append(data, data.length);
+
+        assertFalse(audio.isSpilled());
+        assertEquals(0, directory.list().length);
+        assertArrayEquals(data, audio.toByteString().toByteArray());
+    }
+
+    @Test
+    public void longAudioSpillsToMappedFile() throws Exception {
+        File directory = folder.newFolder();
+        UtteranceAudio audio = new UtteranceAudio(directory);
+        // Long enough to cross from the head into a second mapped chunk, in odd-sized frames
+        byte[] data = frames(UtteranceAudio.HEAD_BYTES + UtteranceAudio.CHUNK_BYTES + 12345);
+        for (int offset = 0; offset < data.length; offset += 3200) {
+            byte[] frame = Arrays.copyOfRange(data, offset, Math.min(data.length, offset + 3200));
+            audio.append(frame, frame.length);
+        }
+
+        assertTrue(audio.isSpilled());
+        assertEquals(data.length, audio.length());
+        assertEquals(1, directory.list().length);
+        assertArrayEquals(data, audio.toByteString().toByteArray());
+
+        audio.release();
+        assertEquals(0, directory.list().length);
+        assertEquals(0, audio.toByteString().size());
+    }
+
+    @Test
+    public void growsOnHeapWithoutSpillDirectory() throws Exception {
+        UtteranceAudio audio = new UtteranceAudio(null);
+        byte[] data = frames(UtteranceAudio.HEAD_BYTES * 3);
+        audio.append(data, data.length);
+
+        assertFalse(audio.isSpilled());
+        assertArrayEquals(data, audio.toByteString().toByteArray());
+    }
+
+    @Test
+    public void deletesLeftoverSpillFiles() throws Exception {
+        File directory = folder.newFolder();
+        UtteranceAudio audio = new UtteranceAudio(directory);
+        byte[] data = frames(UtteranceAudio.HEAD_BYTES + 10);
+        audio.append(data, data.length);
+        assertEquals(1, directory.list().length);
+
+        UtteranceAudio.deleteSpillFiles(directory);
+        assertEquals(0, directory.list().length);
+    }
+
+    private static byte[] frames(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + i / 7);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.speechtranslator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UtterancePipelineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void deliversInCaptureOrderWhileProcessingInParallel() throws Exception {
+        int count = 8;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(count);
+
+        UtterancePipeline pipeline = new UtterancePipeline(3, folder.getRoot(), utterance -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            // Earlier utterances take longer, so they finish after later ones
+            Thread.sleep(10 * (count - utterance.getSequence()));
+            utterance.getTargets().get(0).setTranslation("t" + utterance.getSequence());
+            running.decrementAndGet();
+        }, utterance -> {
+            delivered.add(utterance.getSequence());
+            done.countDown();
+        });
+
+        for (int i = 0; i < count; i++) {
+            Utterance utterance = pipeline.newUtterance("English", Collections.singletonList("Spanish"));
+            utterance.append(new byte[]{1, 2, 3, 4}, 2);
+            assertEquals(2, utterance.getAudioLength());
+            pipeline.submit(utterance);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pipeline.shutdown();
+        for (int i = 0; i < count; i++) {
+            assertEquals(Long.valueOf(i), delivered.get(i));
+        }
+        assertEquals(3, maxRunning.get());
+        assertEquals(0, pipeline.getInFlightCount());
+    }
+
+    @Test
+    public void failedUtteranceStillDeliveredInOrder() throws Exception {
+        List<Utterance> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+        UtterancePipeline pipeline = new UtterancePipeline(2, folder.getRoot(), utterance -> {
+            if (utterance.getSequence() == 0) {
+                Thread.sleep(50);
+                throw new Exception("network down");
+            }
+        }, utterance -> {
+            delivered.add(utterance);
+            done.countDown();
+        });
+
+        pipeline.submit(pipeline.newUtterance("English", Collections.singletonList("French")));
+        pipeline.submit(pipeline.newUtterance("English", Collections.singletonList("French")));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pipeline.shutdown();
+        assertEquals(0, delivered.get(0).getSequence());
+        assertNotNull(delivered.get(0).getMessage());
+        assertEquals(1, delivered.get(1).getSequence());
+        assertNull(delivered.get(1).getMessage());
+    }
+}